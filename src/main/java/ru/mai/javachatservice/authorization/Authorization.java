@@ -50,6 +50,24 @@ public class Authorization {
                     .sizeBlockInBits(128)
                     .initializationVector(generateInitVector(16))
                     .build();
+            // AES - 128-битный ключ, AES_192 и AES_256 - длиннее
+            case "AES", "AES_192", "AES_256" -> CipherInfo.builder()
+                    .nameAlgorithm("AES")
+                    .namePadding(namePadding)
+                    .encryptionMode(encryptionMode)
+                    .sizeKeyInBits(nameAlgorithm.equals("AES") ? 128 : Integer.parseInt(nameAlgorithm.substring("AES_".length())))
+                    .sizeBlockInBits(128)
+                    .initializationVector(generateInitVector(16))
+                    .build();
+            // поточный шифр: дополнение и режим сохраняются, но не используются, вместо IV - случайный nonce в каждом сообщении
+            case "CHACHA20_POLY1305" -> CipherInfo.builder()
+                    .nameAlgorithm("CHACHA20_POLY1305")
+                    .namePadding(namePadding)
+                    .encryptionMode(encryptionMode)
+                    .sizeKeyInBits(256)
+                    .sizeBlockInBits(512)
+                    .initializationVector(generateInitVector(12))
+                    .build();
             default -> throw new IllegalStateException("Unknow algorithms: " + nameAlgorithm);
         };
     }
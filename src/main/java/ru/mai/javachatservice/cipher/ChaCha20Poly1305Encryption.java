@@ -0,0 +1,41 @@
+package ru.mai.javachatservice.cipher;
+
+import ru.mai.javachatservice.cipher.cipher_impl.ChaCha20Poly1305;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// Сообщение: случайный 12-байтный nonce, шифртекст длины текста и 16-байтный тег.
+// Nonce случайный, а не счётчик: обе стороны комнаты получают из Диффи-Хеллмана один и тот же ключ
+public class ChaCha20Poly1305Encryption implements MessageCipher {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ChaCha20Poly1305 cipher;
+
+    public ChaCha20Poly1305Encryption(ChaCha20Poly1305 cipher) {
+        this.cipher = cipher;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text) {
+        byte[] nonce = new byte[ChaCha20Poly1305.NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+
+        byte[] sealed = cipher.encrypt(nonce, text);
+        byte[] result = new byte[nonce.length + sealed.length];
+        System.arraycopy(nonce, 0, result, 0, nonce.length);
+        System.arraycopy(sealed, 0, result, nonce.length, sealed.length);
+        return result;
+    }
+
+    // подделанное или повреждённое сообщение - IllegalArgumentException
+    @Override
+    public byte[] decrypt(byte[] text) {
+        if (text.length < ChaCha20Poly1305.NONCE_SIZE + ChaCha20Poly1305.TAG_SIZE) {
+            throw new IllegalArgumentException("Encrypted message is too short!");
+        }
+
+        byte[] nonce = Arrays.copyOf(text, ChaCha20Poly1305.NONCE_SIZE);
+        return cipher.decrypt(nonce, Arrays.copyOfRange(text, ChaCha20Poly1305.NONCE_SIZE, text.length));
+    }
+}
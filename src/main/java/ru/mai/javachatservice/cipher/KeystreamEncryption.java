@@ -0,0 +1,87 @@
+package ru.mai.javachatservice.cipher;
+
+import java.nio.ByteBuffer;
+
+// Сообщения комнаты в CTR и OFB: вид, nonce и номер первого блока сегмента KeystreamSession, затем шифртекст.
+// encrypt берёт участок заранее выработанного потока шифрующей сессии - строка чата шифруется без ожидания
+// блочного шифра; encryptUnordered шифрует сообщение своим nonce мимо сессии (KeystreamSession.encryptOnce).
+// Шифр комнаты работает в одну сторону (у окна комнаты свой на шифрование и на расшифровку),
+// сессия нужного направления открывается при первом сообщении.
+public class KeystreamEncryption implements MessageCipher, AutoCloseable {
+    private static final byte SESSION = 1;
+    private static final byte ONCE = 2;
+    private static final int HEADER_SIZE = 1 + 2 * Long.BYTES;
+
+    private final SymmetricEncryption symmetricEncryption;
+    private KeystreamSession encryptSession;
+    private KeystreamSession decryptSession;
+
+    public KeystreamEncryption(SymmetricEncryption symmetricEncryption) {
+        this.symmetricEncryption = symmetricEncryption;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text) {
+        return toBytes(SESSION, getEncryptSession().encrypt(text));
+    }
+
+    @Override
+    public byte[] encryptUnordered(byte[] text) {
+        return toBytes(ONCE, getEncryptSession().encryptOnce(text));
+    }
+
+    // повреждённый заголовок - IllegalArgumentException
+    @Override
+    public byte[] decrypt(byte[] text) {
+        if (text.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Encrypted message is too short!");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(text);
+        byte kind = buffer.get();
+        long nonce = buffer.getLong();
+        long blockIndex = buffer.getLong();
+        byte[] cipherText = new byte[buffer.remaining()];
+        buffer.get(cipherText);
+        KeystreamSession.Segment segment = new KeystreamSession.Segment(nonce, blockIndex, cipherText);
+
+        return switch (kind) {
+            case SESSION -> getDecryptSession().decrypt(segment);
+            case ONCE -> getDecryptSession().decryptOnce(segment);
+            default -> throw new IllegalArgumentException("Unexpected message kind: " + kind);
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (encryptSession != null) {
+            encryptSession.close();
+        }
+        if (decryptSession != null) {
+            decryptSession.close();
+        }
+    }
+
+    private synchronized KeystreamSession getEncryptSession() {
+        if (encryptSession == null) {
+            encryptSession = symmetricEncryption.openEncryptSession();
+        }
+        return encryptSession;
+    }
+
+    private synchronized KeystreamSession getDecryptSession() {
+        if (decryptSession == null) {
+            decryptSession = symmetricEncryption.openDecryptSession();
+        }
+        return decryptSession;
+    }
+
+    private static byte[] toBytes(byte kind, KeystreamSession.Segment segment) {
+        return ByteBuffer.allocate(HEADER_SIZE + segment.cipherText().length)
+                .put(kind)
+                .putLong(segment.nonce())
+                .putLong(segment.blockIndex())
+                .put(segment.cipherText())
+                .array();
+    }
+}
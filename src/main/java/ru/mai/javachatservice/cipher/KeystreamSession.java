@@ -0,0 +1,209 @@
+package ru.mai.javachatservice.cipher;
+
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.KeystreamMode;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.KeystreamReservoir;
+import ru.mai.javachatservice.cipher.cipher_impl.padding.Padding;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+
+// Сессия CTR/OFB с заранее выработанным ключевым потоком: шифрование короткого сообщения - дополнение и XOR.
+// У каждой шифрующей сессии свой случайный nonce, он XOR-ится в первые байты IV комнаты: поток сессии не пересекается
+// ни с потоками других сессий и переподключений, ни с encrypt(byte[]) SymmetricEncryption (поток под самим IV).
+// Каждое сообщение получает свой, ещё не использованный участок потока; nonce и номер первого блока передаются
+// вместе с шифртекстом, и расшифровывающая сессия получателя находит тот же участок.
+// Сессия работает в одну сторону: openEncryptSession у отправителя, openDecryptSession у получателя.
+// encryptOnce/decryptOnce - сообщение со своим nonce и потоком с нулевого блока, мимо кольца: для сообщений,
+// которые шифруются параллельно и могут уйти не в порядке номеров блоков (части вложений).
+public class KeystreamSession implements AutoCloseable {
+    // 64 КБ ключевого потока для 16-байтного блока
+    private static final int CAPACITY_BLOCKS = 4096;
+    private static final int LOW_WATERMARK_BLOCKS = 1024;
+    private static final int HIGH_WATERMARK_BLOCKS = CAPACITY_BLOCKS;
+    // последние 4 байта IV - счётчик CTR, nonce - в байтах перед ним
+    private static final int COUNTER_BYTES = Integer.BYTES;
+    // счётчик CTR 32-битный: дальше блоки сессии пошли бы по второму кругу
+    private static final long MAX_BLOCKS = 1L << 32;
+    // nonce прежних сессий отправителя: опоздавшие сегменты CTR расшифровываются по номеру блока
+    private static final int RETIRED_NONCES = 8;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public record Segment(long nonce, long blockIndex, byte[] cipherText) {
+    }
+
+    private final KeystreamMode mode;
+    private final Padding padding;
+    private final byte[] initializationVector_IV;
+    private final ExecutorService executorService;
+    private final boolean encrypting;
+    private final Deque<Long> retiredNonces = new ArrayDeque<>(RETIRED_NONCES);
+    private long nonce;
+    private byte[] sessionVector;
+    private KeystreamMode sessionMode;
+    // у расшифровывающей сессии - null до первого сегмента
+    private KeystreamReservoir reservoir;
+
+    private KeystreamSession(KeystreamMode mode, Padding padding, byte[] initializationVector_IV,
+                             ExecutorService executorService, boolean encrypting) {
+        this.mode = mode;
+        this.padding = padding;
+        this.initializationVector_IV = initializationVector_IV;
+        this.executorService = executorService;
+        this.encrypting = encrypting;
+
+        if (encrypting) {
+            open(newNonce());
+        }
+    }
+
+    public static KeystreamSession forEncryption(KeystreamMode mode, Padding padding, byte[] initializationVector_IV,
+                                                 ExecutorService executorService) {
+        return new KeystreamSession(mode, padding, initializationVector_IV, executorService, true);
+    }
+
+    public static KeystreamSession forDecryption(KeystreamMode mode, Padding padding, byte[] initializationVector_IV,
+                                                 ExecutorService executorService) {
+        return new KeystreamSession(mode, padding, initializationVector_IV, executorService, false);
+    }
+
+    public synchronized Segment encrypt(byte[] text) {
+        if (!encrypting) {
+            throw new IllegalStateException("Keystream session is opened for decryption!");
+        }
+
+        int blockLength = mode.getBlockSize();
+        byte[] data = padding.addPadding(text, blockLength);
+        int countBlocks = data.length / blockLength;
+        if (reservoir.getNextBlock() + countBlocks > MAX_BLOCKS) {
+            throw new IllegalStateException("Keystream session is exhausted, open a new one!");
+        }
+
+        long blockIndex = reservoir.apply(data, 0, countBlocks);
+        return new Segment(nonce, blockIndex, data);
+    }
+
+    // без блокировки сессии: кольцо и nonce сессии не используются
+    public Segment encryptOnce(byte[] text) {
+        if (!encrypting) {
+            throw new IllegalStateException("Keystream session is opened for decryption!");
+        }
+
+        byte[] data = padding.addPadding(text, mode.getBlockSize());
+        long messageNonce = newNonce();
+        byte[] vector = sessionVector(messageNonce);
+        return new Segment(messageNonce, 0, mode.withInitializationVector(vector).encrypt(data, new ChainState(vector)));
+    }
+
+    public byte[] decryptOnce(Segment segment) {
+        if (encrypting) {
+            throw new IllegalStateException("Keystream session is opened for encryption!");
+        }
+
+        byte[] data = segment.cipherText();
+        if (data.length == 0 || data.length % mode.getBlockSize() != 0) {
+            throw new IllegalArgumentException("Encrypted text length is not a multiple of block size!");
+        }
+        if (segment.blockIndex() != 0) {
+            throw new IllegalArgumentException("Illegal keystream block index " + segment.blockIndex());
+        }
+
+        byte[] vector = sessionVector(segment.nonce());
+        return padding.removePadding(mode.withInitializationVector(vector).decrypt(data, new ChainState(vector)));
+    }
+
+    // Сегменты приходят по возрастанию номеров (порядок внутри комнаты это даёт), новый nonce - новая сессия
+    // отправителя. Опоздавший сегмент CTR расшифровывается напрямую по номеру блока, для OFB назад вернуться нельзя
+    public synchronized byte[] decrypt(Segment segment) {
+        if (encrypting) {
+            throw new IllegalStateException("Keystream session is opened for encryption!");
+        }
+
+        int blockLength = mode.getBlockSize();
+        byte[] data = segment.cipherText().clone();
+        if (data.length == 0 || data.length % blockLength != 0) {
+            throw new IllegalArgumentException("Encrypted text length is not a multiple of block size!");
+        }
+        if (segment.blockIndex() < 0 || segment.blockIndex() + data.length / blockLength > MAX_BLOCKS) {
+            throw new IllegalArgumentException("Illegal keystream block index " + segment.blockIndex());
+        }
+
+        if (reservoir == null || segment.nonce() != nonce) {
+            if (retiredNonces.contains(segment.nonce())) {
+                return padding.removePadding(decryptDirectly(data, segment.nonce(), segment.blockIndex()));
+            }
+
+            if (reservoir != null) {
+                reservoir.close();
+                if (retiredNonces.size() == RETIRED_NONCES) {
+                    retiredNonces.removeFirst();
+                }
+                retiredNonces.addLast(nonce);
+            }
+            open(segment.nonce());
+        }
+
+        if (segment.blockIndex() < reservoir.getNextBlock()) {
+            data = decryptDirectly(data, nonce, segment.blockIndex());
+        } else {
+            reservoir.apply(data, 0, data.length / blockLength, segment.blockIndex());
+        }
+
+        return padding.removePadding(data);
+    }
+
+    public synchronized long getNonce() {
+        return nonce;
+    }
+
+    public synchronized KeystreamReservoir getReservoir() {
+        return reservoir;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reservoir != null) {
+            reservoir.close();
+        }
+    }
+
+    private void open(long nonce) {
+        this.nonce = nonce;
+        this.sessionVector = sessionVector(nonce);
+        this.sessionMode = mode.withInitializationVector(sessionVector);
+        this.reservoir = new KeystreamReservoir(sessionMode, sessionVector, executorService,
+                CAPACITY_BLOCKS, LOW_WATERMARK_BLOCKS, HIGH_WATERMARK_BLOCKS);
+    }
+
+    private byte[] decryptDirectly(byte[] data, long segmentNonce, long blockIndex) {
+        if (!mode.supportsRandomAccess()) {
+            throw new IllegalStateException("Keystream block " + blockIndex + " is already used!");
+        }
+
+        byte[] vector = sessionVector(segmentNonce);
+        return mode.withInitializationVector(vector).decrypt(data, new ChainState(vector, blockIndex));
+    }
+
+    // nonce, который меняет IV: иначе поток сессии совпал бы с потоком encrypt(byte[])
+    private long newNonce() {
+        while (true) {
+            long candidate = RANDOM.nextLong();
+            if (!Arrays.equals(sessionVector(candidate), initializationVector_IV)) {
+                return candidate;
+            }
+        }
+    }
+
+    // IV сессии: старшие байты nonce XOR первые байты IV, байты счётчика CTR не трогаются
+    private byte[] sessionVector(long nonce) {
+        byte[] vector = initializationVector_IV.clone();
+        int nonceBytes = Math.min(Long.BYTES, vector.length - COUNTER_BYTES);
+        for (int i = 0; i < nonceBytes; ++i) {
+            vector[i] ^= (byte) (nonce >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.mai.javachatservice.cipher;
+
+import java.util.concurrent.ExecutionException;
+
+// Шифр сообщений комнаты: блочный SymmetricEncryption, KeystreamEncryption для CTR/OFB
+// или ChaCha20-Poly1305 без дополнения и режимов
+public interface MessageCipher {
+    byte[] encrypt(byte[] text) throws ExecutionException, InterruptedException;
+
+    byte[] decrypt(byte[] text) throws ExecutionException, InterruptedException;
+
+    // сообщение, которое шифруется параллельно с другими и может уйти раньше зашифрованных до него (части вложений)
+    default byte[] encryptUnordered(byte[] text) throws ExecutionException, InterruptedException {
+        return encrypt(text);
+    }
+}
@@ -1,11 +1,18 @@
 package ru.mai.javachatservice.cipher;
 
 import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.cipher_impl.RC6;
+import ru.mai.javachatservice.cipher.cipher_impl.RC6Lanes;
+import ru.mai.javachatservice.cipher.cipher_impl.SerpentBitslice;
+import ru.mai.javachatservice.cipher.cipher_impl.SerpentLanes;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.CBC.CBC;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.CTR.CTR;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.CTR.CTRDecryptingChannel;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.ECB.ECB;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.CFB.CFB;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.KeystreamMode;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.OFB.OFB;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.PCBC.PCBC;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.RandomDelta.RandomDelta;
@@ -15,17 +22,28 @@ import ru.mai.javachatservice.cipher.cipher_impl.padding.impl.ANSI_X923;
 import ru.mai.javachatservice.cipher.cipher_impl.padding.impl.ISO_10126;
 import ru.mai.javachatservice.cipher.cipher_impl.padding.impl.Zeros;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
 import ru.mai.javachatservice.cipher.cipher_thread.file.file_impl.FileThreadCipherImpl;
 import ru.mai.javachatservice.cipher.cipher_thread.file.file_impl.FileThreadTaskCipherImpl;
+import ru.mai.javachatservice.cipher.cipher_thread.file.file_impl.MappedFileThreadCipherImpl;
+import ru.mai.javachatservice.cipher.cipher_thread.file.file_interface.FileThreadCipher;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.concurrent.*;
 
 @Slf4j
-public class SymmetricEncryption implements AutoCloseable {
+public class SymmetricEncryption implements MessageCipher, AutoCloseable {
 
     public enum EncryptionModes {
         ECB,
@@ -39,7 +57,8 @@ public class SymmetricEncryption implements AutoCloseable {
 
     public enum EncryptionAlgorithm {
         RC6,
-        SERPENT
+        SERPENT,
+        AES
     }
 
     public enum PaddingMode {
@@ -49,22 +68,41 @@ public class SymmetricEncryption implements AutoCloseable {
         ISO_10126
     }
 
-    private final ExecutorService executorService;
+    // LANES - полосные RC6Lanes/SerpentLanes для ECB и CTR, для остальных алгоритмов остаётся обычный
+    public enum EncryptionEngine {
+        SCALAR,
+        LANES
+    }
+
+    // кусок потоковой обработки в блоках: 1 МБ для 16-байтного блока, больше порога BlockParallelism
+    private static final int STREAM_BUFFER_BLOCKS = 1 << 16;
+
+    private final CryptoExecutor executorService;
     private final EncryptionMode encryptionMode;
     private final Padding padding;
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] initializationVector_IV;
 
     public SymmetricEncryption(EncryptionModes encryptionMode, PaddingMode paddingMode, CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV) {
-        this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() - 1);
+        this(encryptionMode, paddingMode, cipherAlgorithm, initializationVector_IV, EncryptionEngine.SCALAR);
+    }
+
+    public SymmetricEncryption(EncryptionModes encryptionMode, PaddingMode paddingMode, CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, EncryptionEngine engine) {
+        this(encryptionMode, paddingMode, cipherAlgorithm, initializationVector_IV, engine, CryptoExecutor.getShared());
+    }
+
+    // пул общий на процесс: режимы делят блоки на куски через BlockParallelism и балансируют их воровством задач
+    public SymmetricEncryption(EncryptionModes encryptionMode, PaddingMode paddingMode, CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, EncryptionEngine engine, CryptoExecutor cryptoExecutor) {
+        this.executorService = cryptoExecutor;
+        CipherAlgorithms bulkAlgorithm = (engine == EncryptionEngine.LANES) ? toLanes(cipherAlgorithm) : cipherAlgorithm;
 
         this.encryptionMode = switch (encryptionMode) {
-            case ECB -> new ECB(cipherAlgorithm, executorService);
+            case ECB -> new ECB(bulkAlgorithm, executorService);
             case CBC -> new CBC(cipherAlgorithm, initializationVector_IV, executorService);
             case PCBC -> new PCBC(cipherAlgorithm, initializationVector_IV, executorService);
             case CFB -> new CFB(cipherAlgorithm, initializationVector_IV, executorService);
             case OFB -> new OFB(cipherAlgorithm, initializationVector_IV);
-            case CTR -> new CTR(cipherAlgorithm, initializationVector_IV, executorService);
+            case CTR -> new CTR(bulkAlgorithm, initializationVector_IV, executorService);
             case RANDOM_DELTA -> new RandomDelta(cipherAlgorithm, initializationVector_IV, executorService);
         };
 
@@ -80,6 +118,7 @@ public class SymmetricEncryption implements AutoCloseable {
     }
 
 
+    @Override
     public byte[] encrypt(byte[] textToEncrypt) throws ExecutionException, InterruptedException {
         log.info("Starting encrypt byte text");
         try {
@@ -92,6 +131,7 @@ public class SymmetricEncryption implements AutoCloseable {
         return new byte[0];
     }
 
+    @Override
     public byte[] decrypt(byte[] textToDecrypt) throws ExecutionException, InterruptedException {
         log.info("Starting decrypt byte text");
         try {
@@ -106,7 +146,213 @@ public class SymmetricEncryption implements AutoCloseable {
         return new byte[0];
     }
 
+    // Потоковое шифрование с постоянной памятью: вход читается кусками по STREAM_BUFFER_BLOCKS блоков,
+    // цепочка режима переносится между кусками, дополнение добавляется только к последнему куску.
+    // Результат совпадает с encrypt(byte[]) для всего входа. Потоки не закрываются.
+    public void encrypt(InputStream input, OutputStream output) throws IOException {
+        log.info("Starting encrypt stream");
+        int blockLength = cipherAlgorithm.getBlockSize();
+        byte[] buffer = new byte[STREAM_BUFFER_BLOCKS * blockLength];
+        ChainState state = new ChainState(initializationVector_IV);
+
+        int length;
+        while ((length = readFully(input, buffer)) == buffer.length) {
+            output.write(encryptionMode.encrypt(buffer, state));
+        }
+
+        byte[] lastPart = padding.addPadding(Arrays.copyOf(buffer, length), blockLength);
+        output.write(encryptionMode.encrypt(lastPart, state));
+        output.flush();
+    }
+
+    // Последний расшифрованный блок придерживается, пока не станет ясно, что он последний:
+    // дополнение снимается только с него.
+    public void decrypt(InputStream input, OutputStream output) throws IOException {
+        log.info("Starting decrypt stream");
+        int blockLength = cipherAlgorithm.getBlockSize();
+        byte[] buffer = new byte[STREAM_BUFFER_BLOCKS * blockLength];
+        byte[] lastBlock = null;
+        ChainState state = new ChainState(initializationVector_IV);
+
+        int length;
+        while ((length = readFully(input, buffer)) > 0) {
+            if (length % blockLength != 0) {
+                throw new IOException("Encrypted stream length is not a multiple of block size!");
+            }
+
+            byte[] part = encryptionMode.decrypt(length == buffer.length ? buffer : Arrays.copyOf(buffer, length), state);
+            if (lastBlock != null) {
+                output.write(lastBlock);
+            }
+            output.write(part, 0, length - blockLength);
+            lastBlock = Arrays.copyOfRange(part, length - blockLength, length);
+
+            if (length < buffer.length) {
+                break;
+            }
+        }
+
+        if (lastBlock != null) {
+            try {
+                output.write(padding.removePadding(lastBlock));
+            } catch (RuntimeException ex) {
+                throw new IOException("Illegal padding in encrypted stream!", ex);
+            }
+        }
+        output.flush();
+    }
+
+    // Шифрование буферов вне кучи (direct, отображённых файлов) без копирования содержимого в кучу:
+    // целые блоки source идут через режим прямо в destination, в куче только хвост с дополнением.
+    // source читается от position до limit, destination заполняется с position; результат как у encrypt(byte[])
+    public void encrypt(ByteBuffer source, ByteBuffer destination) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        int tailLength = source.remaining() % blockLength;
+        ChainState state = new ChainState(initializationVector_IV);
 
+        int limit = source.limit();
+        source.limit(limit - tailLength);
+        encryptionMode.encrypt(source, destination, state);
+        source.limit(limit);
+
+        byte[] tail = new byte[tailLength];
+        source.get(tail);
+        destination.put(encryptionMode.encrypt(padding.addPadding(tail, blockLength), state));
+    }
+
+    // расшифрованное дополнение остаётся в destination за его position
+    public void decrypt(ByteBuffer source, ByteBuffer destination) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        if (source.remaining() == 0 || source.remaining() % blockLength != 0) {
+            throw new IllegalArgumentException("Encrypted buffer length is not a multiple of block size!");
+        }
+
+        encryptionMode.decrypt(source, destination, new ChainState(initializationVector_IV));
+
+        byte[] lastBlock = new byte[blockLength];
+        destination.get(destination.position() - blockLength, lastBlock);
+        int countBytesPadding = lastBlock.length - padding.removePadding(lastBlock).length;
+        destination.position(destination.position() - countBytesPadding);
+    }
+
+    public void encrypt(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        encrypt(Channels.newInputStream(input), Channels.newOutputStream(output));
+    }
+
+    public void decrypt(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        decrypt(Channels.newInputStream(input), Channels.newOutputStream(output));
+    }
+
+    // Расшифровка диапазона [offset, offset + length) открытого текста без расшифровки остального (только CTR):
+    // дополнение есть лишь в последнем блоке, поэтому смещения открытого текста и шифртекста совпадают;
+    // диапазон обрезается по концу открытого текста
+    public byte[] decryptRange(byte[] cipherText, int offset, int length) {
+        CTR ctr = getRandomAccessMode();
+        int blockLength = cipherAlgorithm.getBlockSize();
+        if (cipherText.length == 0 || cipherText.length % blockLength != 0) {
+            throw new IllegalArgumentException("Encrypted text length is not a multiple of block size!");
+        }
+
+        byte[] lastBlock = ctr.decryptRange(cipherText, cipherText.length - blockLength, blockLength);
+        int plainLength = (int) getPlainLength(cipherText.length, lastBlock);
+        if (offset < 0 || length < 0 || offset > plainLength) {
+            throw new IndexOutOfBoundsException("Range " + offset + ".." + (offset + length) + " is out of text of length " + plainLength);
+        }
+
+        return ctr.decryptRange(cipherText, offset, Math.min(length, plainLength - offset));
+    }
+
+    // канал с произвольным доступом к расшифрованному содержимому шифртекста (только CTR), например для
+    // range-запросов к вложениям; закрывает cipherChannel при закрытии
+    public SeekableByteChannel openDecryptingChannel(SeekableByteChannel cipherChannel) throws IOException {
+        CTR ctr = getRandomAccessMode();
+        int blockLength = cipherAlgorithm.getBlockSize();
+        long cipherLength = cipherChannel.size();
+        if (cipherLength == 0 || cipherLength % blockLength != 0) {
+            throw new IOException("Encrypted channel length is not a multiple of block size!");
+        }
+
+        byte[] lastBlock = new byte[blockLength];
+        ByteBuffer target = ByteBuffer.wrap(lastBlock);
+        cipherChannel.position(cipherLength - blockLength);
+        while (target.hasRemaining()) {
+            if (cipherChannel.read(target) < 0) {
+                throw new IOException("Encrypted channel is shorter than its size!");
+            }
+        }
+        ctr.xorKeystream(lastBlock, 0, blockLength, cipherLength - blockLength);
+
+        try {
+            return new CTRDecryptingChannel(ctr, cipherChannel, getPlainLength(cipherLength, lastBlock));
+        } catch (RuntimeException ex) {
+            throw new IOException("Illegal padding in encrypted channel!", ex);
+        }
+    }
+
+    // Сессии с заранее выработанным ключевым потоком для коротких сообщений (только CTR и OFB).
+    // Шифрующая сессия берёт случайный nonce, поэтому её поток не пересекается ни с другими сессиями, ни с encrypt(byte[])
+    public KeystreamSession openEncryptSession() {
+        return KeystreamSession.forEncryption(getKeystreamMode(), padding, initializationVector_IV, executorService);
+    }
+
+    public KeystreamSession openDecryptSession() {
+        return KeystreamSession.forDecryption(getKeystreamMode(), padding, initializationVector_IV, executorService);
+    }
+
+    public boolean supportsKeystreamSessions() {
+        return encryptionMode instanceof KeystreamMode;
+    }
+
+    private KeystreamMode getKeystreamMode() {
+        if (encryptionMode instanceof KeystreamMode keystreamMode) {
+            return keystreamMode;
+        }
+
+        throw new UnsupportedOperationException("Keystream sessions are supported only in CTR and OFB modes!");
+    }
+
+    private CTR getRandomAccessMode() {
+        if (encryptionMode instanceof CTR ctr) {
+            return ctr;
+        }
+
+        throw new UnsupportedOperationException("Random access decryption is supported only in CTR mode!");
+    }
+
+    // длина без дополнения по расшифрованному последнему блоку
+    private long getPlainLength(long cipherLength, byte[] lastBlock) {
+        return cipherLength - (lastBlock.length - padding.removePadding(lastBlock).length);
+    }
+
+    // читает, пока буфер не заполнится или поток не кончится
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+
+        return length;
+    }
+
+    // шифр уже дополненных файлов через отображение в память, режим и пул общие с этим шифром
+    public FileThreadCipher getFileThreadCipher() {
+        return new MappedFileThreadCipherImpl(encryptionMode, initializationVector_IV, cipherAlgorithm.getBlockSize(), executorService);
+    }
+
+    private static CipherAlgorithms toLanes(CipherAlgorithms cipherAlgorithm) {
+        if (cipherAlgorithm instanceof RC6 rc6) {
+            return new RC6Lanes(rc6);
+        }
+        if (cipherAlgorithm instanceof SerpentBitslice serpent) {
+            return new SerpentLanes(serpent);
+        }
+
+        return cipherAlgorithm;
+    }
 
     private String addPostfixToFileName(String pathToInputFile, String postfix) {
         log.info("Starting add Postfix to file");
@@ -116,15 +362,8 @@ public class SymmetricEncryption implements AutoCloseable {
         return baseName + postfix + extension;
     }
 
+    // пул не наш (CryptoExecutor), его закрывает владелец; своих ресурсов у шифра нет
     @Override
     public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException ex) {
-            executorService.shutdownNow();
-        }
     }
 }
\ No newline at end of file
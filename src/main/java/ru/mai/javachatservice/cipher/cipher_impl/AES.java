@@ -0,0 +1,144 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+// AES-128/192/256 через JCA: провайдер JDK использует интринсики AES-NI/ARMv8 AES, а блоки подряд
+// отдаются ему одним вызовом. Для CBC и CTR режимы передают провайдеру сразу весь текст (encryptCbc/decryptCbc/applyCtr).
+// Объекты Cipher не потокобезопасны: у каждого потока пула свои.
+public class AES implements CipherAlgorithms {
+    private static final int BLOCK_SIZE = 16;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> encryptCipher;
+    private final ThreadLocal<Cipher> decryptCipher;
+    private final ThreadLocal<Cipher> cbcCipher;
+    private final ThreadLocal<Cipher> ctrCipher;
+
+    public AES(byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("Illegal AES key size: " + key.length * Byte.SIZE + " bits");
+        }
+
+        this.key = new SecretKeySpec(key, "AES");
+        this.encryptCipher = ThreadLocal.withInitial(() -> newCipher("AES/ECB/NoPadding", Cipher.ENCRYPT_MODE));
+        this.decryptCipher = ThreadLocal.withInitial(() -> newCipher("AES/ECB/NoPadding", Cipher.DECRYPT_MODE));
+        this.cbcCipher = ThreadLocal.withInitial(() -> newCipher("AES/CBC/NoPadding", -1));
+        this.ctrCipher = ThreadLocal.withInitial(() -> newCipher("AES/CTR/NoPadding", -1));
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public byte[] encryptBlock(byte[] text) {
+        byte[] result = new byte[BLOCK_SIZE];
+        encryptBlocks(text, 0, result, 0, 1);
+        return result;
+    }
+
+    @Override
+    public byte[] decryptBlock(byte[] text) {
+        byte[] result = new byte[BLOCK_SIZE];
+        decryptBlocks(text, 0, result, 0, 1);
+        return result;
+    }
+
+    @Override
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        encryptBlocks(in, inOff, out, outOff, 1);
+    }
+
+    @Override
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        decryptBlocks(in, inOff, out, outOff, 1);
+    }
+
+    @Override
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        process(encryptCipher.get(), src, srcOff, dst, dstOff, count * BLOCK_SIZE);
+    }
+
+    @Override
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        process(decryptCipher.get(), src, srcOff, dst, dstOff, count * BLOCK_SIZE);
+    }
+
+    @Override
+    public void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        process(encryptCipher.get(), src, srcOff, dst, dstOff, count * BLOCK_SIZE);
+    }
+
+    @Override
+    public void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        process(decryptCipher.get(), src, srcOff, dst, dstOff, count * BLOCK_SIZE);
+    }
+
+    // length байт (кратно блоку) через AES/CBC/NoPadding провайдера, результат совпадает с режимом CBC
+    public void encryptCbc(byte[] src, byte[] dst, int length, byte[] IV) {
+        process(initCipher(cbcCipher.get(), Cipher.ENCRYPT_MODE, IV), src, 0, dst, 0, length);
+    }
+
+    public void decryptCbc(byte[] src, byte[] dst, int length, byte[] IV) {
+        process(initCipher(cbcCipher.get(), Cipher.DECRYPT_MODE, IV), src, 0, dst, 0, length);
+    }
+
+    // AES/CTR провайдера увеличивает все 128 бит счётчика, режим CTR - только младшие 32:
+    // результаты совпадают, пока младшие 32 бита counterBlock не переполняются внутри текста
+    public void applyCtr(byte[] src, byte[] dst, int length, byte[] counterBlock) {
+        process(initCipher(ctrCipher.get(), Cipher.ENCRYPT_MODE, counterBlock), src, 0, dst, 0, length);
+    }
+
+    private Cipher newCipher(String transformation, int mode) {
+        try {
+            Cipher cipher = Cipher.getInstance(transformation);
+            if (mode != -1) {
+                cipher.init(mode, key);
+            }
+            return cipher;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("AES is not available: " + transformation, ex);
+        }
+    }
+
+    private Cipher initCipher(Cipher cipher, int mode, byte[] IV) {
+        try {
+            cipher.init(mode, key, new IvParameterSpec(IV, 0, BLOCK_SIZE));
+            return cipher;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // doFinal допускает совпадающие src и dst
+    private static void process(Cipher cipher, byte[] src, int srcOff, byte[] dst, int dstOff, int length) {
+        if (length == 0) {
+            return;
+        }
+
+        try {
+            cipher.doFinal(src, srcOff, length, dst, dstOff);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void process(Cipher cipher, ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int length) {
+        if (length == 0) {
+            return;
+        }
+
+        try {
+            cipher.doFinal(src.duplicate().limit(srcOff + length).position(srcOff), dst.duplicate().limit(dstOff + length).position(dstOff));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
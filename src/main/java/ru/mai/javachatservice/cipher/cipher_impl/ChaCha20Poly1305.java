@@ -0,0 +1,261 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+// AEAD ChaCha20-Poly1305 по RFC 8439 (без дополнительных данных): поточный шифр, дополнение и блочные режимы не нужны.
+// 64-байтные блоки ChaCha20 зависят только от счётчика, поэтому длинный текст делится на куски по ядрам через BlockParallelism;
+// Poly1305 считается последовательно по готовому шифртексту.
+public class ChaCha20Poly1305 {
+    public static final int KEY_SIZE = 32;
+    public static final int NONCE_SIZE = 12;
+    public static final int TAG_SIZE = 16;
+    private static final int BLOCK_SIZE = 64;
+    private static final int[] SIGMA = {0x61707865, 0x3320646e, 0x79622d32, 0x6b206574};
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int[] key;
+    private final ExecutorService executorService;
+
+    public ChaCha20Poly1305(byte[] key, ExecutorService executorService) {
+        if (key.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Illegal ChaCha20 key size: " + key.length * Byte.SIZE + " bits");
+        }
+
+        this.key = new int[KEY_SIZE / Integer.BYTES];
+        for (int i = 0; i < this.key.length; ++i) {
+            this.key[i] = (int) INT_VIEW.get(key, i * Integer.BYTES);
+        }
+        this.executorService = executorService;
+    }
+
+    // шифртекст той же длины, что текст, и тег в конце
+    public byte[] encrypt(byte[] nonce, byte[] text) {
+        int[] nonceWords = toNonceWords(nonce);
+        byte[] result = new byte[text.length + TAG_SIZE];
+        xorKeystream(text, result, text.length, nonceWords);
+        computeTag(result, text.length, nonceWords, result, text.length);
+        return result;
+    }
+
+    public byte[] decrypt(byte[] nonce, byte[] cipherTextWithTag) {
+        if (cipherTextWithTag.length < TAG_SIZE) {
+            throw new IllegalArgumentException("Encrypted text is shorter than tag!");
+        }
+
+        int[] nonceWords = toNonceWords(nonce);
+        int length = cipherTextWithTag.length - TAG_SIZE;
+        byte[] tag = new byte[TAG_SIZE];
+        computeTag(cipherTextWithTag, length, nonceWords, tag, 0);
+        // сравнение за постоянное время, текст не расшифровывается, пока тег не сошёлся
+        if (!MessageDigest.isEqual(tag, Arrays.copyOfRange(cipherTextWithTag, length, cipherTextWithTag.length))) {
+            throw new IllegalArgumentException("Message authentication failed!");
+        }
+
+        byte[] result = new byte[length];
+        xorKeystream(cipherTextWithTag, result, length, nonceWords);
+        return result;
+    }
+
+    // блоки с счётчиком 1, 2, ...: нулевой блок отдан под ключ Poly1305
+    private void xorKeystream(byte[] source, byte[] destination, int length, int[] nonceWords) {
+        int countBlocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        BlockParallelism.forEachChunk(executorService, ChaCha20Poly1305.class, countBlocks, BLOCK_SIZE, (firstBlock, count) -> {
+            int[] keystream = new int[BLOCK_SIZE / Integer.BYTES];
+            byte[] lastBlock = new byte[BLOCK_SIZE];
+
+            for (int block = firstBlock; block < firstBlock + count; ++block) {
+                chachaBlock(block + 1, nonceWords, keystream);
+                int offset = block * BLOCK_SIZE;
+                int blockLength = Math.min(BLOCK_SIZE, length - offset);
+
+                if (blockLength == BLOCK_SIZE) {
+                    for (int i = 0; i < keystream.length; ++i) {
+                        int index = offset + i * Integer.BYTES;
+                        INT_VIEW.set(destination, index, (int) INT_VIEW.get(source, index) ^ keystream[i]);
+                    }
+                } else {
+                    for (int i = 0; i < keystream.length; ++i) {
+                        INT_VIEW.set(lastBlock, i * Integer.BYTES, keystream[i]);
+                    }
+                    for (int i = 0; i < blockLength; ++i) {
+                        destination[offset + i] = (byte) (source[offset + i] ^ lastBlock[i]);
+                    }
+                }
+            }
+        });
+    }
+
+    // тег Poly1305 по шифртексту: ключ - первые 32 байта блока ChaCha20 со счётчиком 0
+    private void computeTag(byte[] cipherText, int length, int[] nonceWords, byte[] tag, int tagOffset) {
+        int[] keystream = new int[BLOCK_SIZE / Integer.BYTES];
+        chachaBlock(0, nonceWords, keystream);
+        byte[] oneTimeKey = new byte[32];
+        for (int i = 0; i < oneTimeKey.length / Integer.BYTES; ++i) {
+            INT_VIEW.set(oneTimeKey, i * Integer.BYTES, keystream[i]);
+        }
+
+        Poly1305 poly1305 = new Poly1305(oneTimeKey);
+        poly1305.updatePadded(cipherText, 0, length);
+        // длины дополнительных данных (0) и шифртекста, по 8 байт little-endian
+        byte[] lengths = new byte[16];
+        LONG_VIEW.set(lengths, 8, (long) length);
+        poly1305.updatePadded(lengths, 0, lengths.length);
+        poly1305.finish(tag, tagOffset);
+        Arrays.fill(oneTimeKey, (byte) 0);
+    }
+
+    private static int[] toNonceWords(byte[] nonce) {
+        if (nonce.length != NONCE_SIZE) {
+            throw new IllegalArgumentException("Illegal ChaCha20 nonce size: " + nonce.length);
+        }
+
+        return new int[]{(int) INT_VIEW.get(nonce, 0), (int) INT_VIEW.get(nonce, 4), (int) INT_VIEW.get(nonce, 8)};
+    }
+
+    private void chachaBlock(int counter, int[] nonceWords, int[] output) {
+        int x0 = SIGMA[0], x1 = SIGMA[1], x2 = SIGMA[2], x3 = SIGMA[3];
+        int x4 = key[0], x5 = key[1], x6 = key[2], x7 = key[3];
+        int x8 = key[4], x9 = key[5], x10 = key[6], x11 = key[7];
+        int x12 = counter, x13 = nonceWords[0], x14 = nonceWords[1], x15 = nonceWords[2];
+
+        // 10 двойных раундов: четверти по столбцам, затем по диагоналям
+        for (int round = 0; round < 10; ++round) {
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 16); x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+            x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 8); x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 16); x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+            x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 8); x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 16); x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+            x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 8); x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 16); x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+            x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 8); x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
+
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 16); x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+            x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 8); x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 16); x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+            x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 8); x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 16); x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+            x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 8); x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 16); x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+            x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 8); x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
+        }
+
+        output[0] = x0 + SIGMA[0]; output[1] = x1 + SIGMA[1]; output[2] = x2 + SIGMA[2]; output[3] = x3 + SIGMA[3];
+        output[4] = x4 + key[0]; output[5] = x5 + key[1]; output[6] = x6 + key[2]; output[7] = x7 + key[3];
+        output[8] = x8 + key[4]; output[9] = x9 + key[5]; output[10] = x10 + key[6]; output[11] = x11 + key[7];
+        output[12] = x12 + counter; output[13] = x13 + nonceWords[0]; output[14] = x14 + nonceWords[1]; output[15] = x15 + nonceWords[2];
+    }
+
+    // Poly1305 на пяти 26-битных частях в long: произведения частей не выходят за 64 бита
+    private static class Poly1305 {
+        private static final long MASK_26 = 0x3ffffff;
+        private static final long MASK_32 = 0xffffffffL;
+
+        private final long r0, r1, r2, r3, r4;
+        private final long s1, s2, s3, s4;
+        private final long[] pad = new long[4];
+        private long h0, h1, h2, h3, h4;
+        private final byte[] block = new byte[16];
+
+        Poly1305(byte[] oneTimeKey) {
+            // r с обнулёнными по RFC битами
+            r0 = word(oneTimeKey, 0) & 0x3ffffff;
+            r1 = (word(oneTimeKey, 3) >>> 2) & 0x3ffff03;
+            r2 = (word(oneTimeKey, 6) >>> 4) & 0x3ffc0ff;
+            r3 = (word(oneTimeKey, 9) >>> 6) & 0x3f03fff;
+            r4 = (word(oneTimeKey, 12) >>> 8) & 0x00fffff;
+            s1 = r1 * 5;
+            s2 = r2 * 5;
+            s3 = r3 * 5;
+            s4 = r4 * 5;
+            for (int i = 0; i < pad.length; ++i) {
+                pad[i] = word(oneTimeKey, 16 + i * Integer.BYTES);
+            }
+        }
+
+        // в AEAD данные дополняются нулями до 16 байт, поэтому неполный хвост - обычный блок с нулями в конце
+        void updatePadded(byte[] data, int offset, int length) {
+            int i = 0;
+            for (; i + 16 <= length; i += 16) {
+                processBlock(data, offset + i);
+            }
+
+            if (i < length) {
+                Arrays.fill(block, (byte) 0);
+                System.arraycopy(data, offset + i, block, 0, length - i);
+                processBlock(block, 0);
+            }
+        }
+
+        void finish(byte[] tag, int tagOffset) {
+            long c = h1 >>> 26; h1 &= MASK_26;
+            h2 += c; c = h2 >>> 26; h2 &= MASK_26;
+            h3 += c; c = h3 >>> 26; h3 &= MASK_26;
+            h4 += c; c = h4 >>> 26; h4 &= MASK_26;
+            h0 += c * 5; c = h0 >>> 26; h0 &= MASK_26;
+            h1 += c;
+
+            // h - p: если не отрицательно, берём его
+            long g0 = h0 + 5; c = g0 >>> 26; g0 &= MASK_26;
+            long g1 = h1 + c; c = g1 >>> 26; g1 &= MASK_26;
+            long g2 = h2 + c; c = g2 >>> 26; g2 &= MASK_26;
+            long g3 = h3 + c; c = g3 >>> 26; g3 &= MASK_26;
+            long g4 = h4 + c - (1L << 26);
+            if (g4 >= 0) {
+                h0 = g0;
+                h1 = g1;
+                h2 = g2;
+                h3 = g3;
+                h4 = g4;
+            }
+
+            long w0 = (h0 | (h1 << 26)) & MASK_32;
+            long w1 = ((h1 >>> 6) | (h2 << 20)) & MASK_32;
+            long w2 = ((h2 >>> 12) | (h3 << 14)) & MASK_32;
+            long w3 = ((h3 >>> 18) | (h4 << 8)) & MASK_32;
+
+            long f = w0 + pad[0];
+            INT_VIEW.set(tag, tagOffset, (int) f);
+            f = w1 + pad[1] + (f >>> 32);
+            INT_VIEW.set(tag, tagOffset + 4, (int) f);
+            f = w2 + pad[2] + (f >>> 32);
+            INT_VIEW.set(tag, tagOffset + 8, (int) f);
+            f = w3 + pad[3] + (f >>> 32);
+            INT_VIEW.set(tag, tagOffset + 12, (int) f);
+        }
+
+        // блок с добавленной единицей над старшим байтом
+        private void processBlock(byte[] data, int offset) {
+            h0 += word(data, offset) & MASK_26;
+            h1 += (word(data, offset + 3) >>> 2) & MASK_26;
+            h2 += (word(data, offset + 6) >>> 4) & MASK_26;
+            h3 += (word(data, offset + 9) >>> 6) & MASK_26;
+            h4 += (word(data, offset + 12) >>> 8) | (1L << 24);
+
+            long d0 = h0 * r0 + h1 * s4 + h2 * s3 + h3 * s2 + h4 * s1;
+            long d1 = h0 * r1 + h1 * r0 + h2 * s4 + h3 * s3 + h4 * s2;
+            long d2 = h0 * r2 + h1 * r1 + h2 * r0 + h3 * s4 + h4 * s3;
+            long d3 = h0 * r3 + h1 * r2 + h2 * r1 + h3 * r0 + h4 * s4;
+            long d4 = h0 * r4 + h1 * r3 + h2 * r2 + h3 * r1 + h4 * r0;
+
+            long c = d0 >>> 26; h0 = d0 & MASK_26;
+            d1 += c; c = d1 >>> 26; h1 = d1 & MASK_26;
+            d2 += c; c = d2 >>> 26; h2 = d2 & MASK_26;
+            d3 += c; c = d3 >>> 26; h3 = d3 & MASK_26;
+            d4 += c; c = d4 >>> 26; h4 = d4 & MASK_26;
+            h0 += c * 5; c = h0 >>> 26; h0 &= MASK_26;
+            h1 += c;
+        }
+
+        private static long word(byte[] data, int offset) {
+            return (int) INT_VIEW.get(data, offset) & MASK_32;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static ru.mai.javachatservice.cipher.utils.BinaryOperations.byteToIntArray;
+
+// LRU-кэш развёрнутых раундовых ключей: при рукопожатии шифр строится дважды (на шифрование и расшифрование),
+// а переподключения повторяют это с тем же ключом.
+// Ключ кэша - алгоритм, длина ключа и SHA-256 от ключа, сам ключ не хранится.
+// Наружу отдаётся копия раундовых ключей, поэтому вытесненную запись можно сразу обнулить.
+// Счётчики попаданий/промахов доступны через getHits/getMisses.
+@Slf4j
+public class KeyScheduleCache {
+    private final int capacity;
+    private final Map<String, Object> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public KeyScheduleCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > KeyScheduleCache.this.capacity) {
+                    wipe(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public RC6 getRC6(byte[] key) {
+        int[] roundKeys = (int[]) lookup("RC6", key.length * Byte.SIZE, key, () -> new RC6(key).getRoundKeys());
+        return new RC6(roundKeys);
+    }
+
+    public SerpentBitslice getSerpent(int sizeKeyInBits, byte[] key) {
+        long[] roundKeys = (long[]) lookup("SERPENT", sizeKeyInBits, key,
+                () -> new SerpentBitslice(sizeKeyInBits, byteToIntArray(key)).getRoundKeys());
+        return new SerpentBitslice(roundKeys);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.values().forEach(KeyScheduleCache::wipe);
+        entries.clear();
+    }
+
+    private Object lookup(String algorithm, int sizeKeyInBits, byte[] key, Supplier<Object> expand) {
+        String cacheKey = algorithm + ":" + sizeKeyInBits + ":" + digest(key);
+
+        synchronized (this) {
+            Object roundKeys = entries.get(cacheKey);
+            if (roundKeys != null) {
+                hits.incrementAndGet();
+                return copy(roundKeys);
+            }
+        }
+
+        // разворачиваем вне блокировки, чтобы одновременные рукопожатия с разными ключами не ждали друг друга
+        misses.incrementAndGet();
+        Object expanded = expand.get();
+
+        synchronized (this) {
+            Object existing = entries.putIfAbsent(cacheKey, expanded);
+            if (existing != null) {
+                wipe(expanded);
+                return copy(existing);
+            }
+
+            log.debug("Key schedule cache miss for {}, hits={}, misses={}", algorithm, hits.get(), misses.get());
+            return copy(expanded);
+        }
+    }
+
+    // копия снимается под блокировкой, иначе запись могут вытеснить и обнулить до копирования
+    private static Object copy(Object roundKeys) {
+        if (roundKeys instanceof int[] ints) {
+            return ints.clone();
+        }
+
+        return ((long[]) roundKeys).clone();
+    }
+
+    private static String digest(byte[] key) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(key));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void wipe(Object roundKeys) {
+        if (roundKeys instanceof int[] ints) {
+            Arrays.fill(ints, 0);
+        } else if (roundKeys instanceof long[] longs) {
+            Arrays.fill(longs, 0L);
+        }
+    }
+}
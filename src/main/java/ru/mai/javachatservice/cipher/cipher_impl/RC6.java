@@ -10,7 +10,7 @@ public class RC6 implements CipherAlgorithms {
     private static final int P32 = 0xB7E15163;
     private static final int Q32 = 0x9E3779B9;
 
-    private int[] roundKeys;
+    private final int[] roundKeys;
 
     public RC6(byte[] key) {
         int lenKeyInBits = key.length * 8;
@@ -20,6 +20,16 @@ public class RC6 implements CipherAlgorithms {
         this.roundKeys = keyExpansion(key); // Генерация раундовых ключей на основе переданного ключа
     }
 
+    // из уже развёрнутых раундовых ключей, для KeyScheduleCache
+    RC6(int[] roundKeys) {
+        this.roundKeys = roundKeys;
+    }
+
+    // для RC6Lanes и KeyScheduleCache
+    int[] getRoundKeys() {
+        return roundKeys;
+    }
+
     @Override
     public int getBlockSize() {
         return BLOCK_SIZE;
@@ -27,12 +37,58 @@ public class RC6 implements CipherAlgorithms {
 
     @Override
     public byte[] encryptBlock(byte[] inputBlock) {
-        return encrypt(inputBlock, roundKeys);
+        byte[] result = new byte[BLOCK_SIZE];
+        encrypt(inputBlock, 0, result, 0, roundKeys);
+        return result;
     }
 
     @Override
     public byte[] decryptBlock(byte[] inputBlock) {
-        return decrypt(inputBlock, roundKeys);
+        byte[] result = new byte[BLOCK_SIZE];
+        decrypt(inputBlock, 0, result, 0, roundKeys);
+        return result;
+    }
+
+    @Override
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        encrypt(in, inOff, out, outOff, roundKeys);
+    }
+
+    @Override
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        decrypt(in, inOff, out, outOff, roundKeys);
+    }
+
+    @Override
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        // по 4 блока за проход: цепочки умножений и сдвигов разных блоков не зависят друг от друга
+        for (; count >= 4; count -= 4, srcOff += 4 * BLOCK_SIZE, dstOff += 4 * BLOCK_SIZE) {
+            encrypt4(src, srcOff, dst, dstOff, roundKeys);
+        }
+        for (; count > 0; count--, srcOff += BLOCK_SIZE, dstOff += BLOCK_SIZE) {
+            encrypt(src, srcOff, dst, dstOff, roundKeys);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        for (; count >= 4; count -= 4, srcOff += 4 * BLOCK_SIZE, dstOff += 4 * BLOCK_SIZE) {
+            decrypt4(src, srcOff, dst, dstOff, roundKeys);
+        }
+        for (; count > 0; count--, srcOff += BLOCK_SIZE, dstOff += BLOCK_SIZE) {
+            decrypt(src, srcOff, dst, dstOff, roundKeys);
+        }
+    }
+
+    // слова из буфера читает полосный движок, он делит с этим шифром раундовые ключи
+    @Override
+    public void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        new RC6Lanes(this).encryptBlocks(src, srcOff, dst, dstOff, count);
+    }
+
+    @Override
+    public void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        new RC6Lanes(this).decryptBlocks(src, srcOff, dst, dstOff, count);
     }
 
     private int[] keyExpansion(byte[] key) {
@@ -62,11 +118,11 @@ public class RC6 implements CipherAlgorithms {
         return S;
     }
 
-    private byte[] encrypt(byte[] block, int[] S) {
-        int A = ByteBuffer.wrap(block, 0, 4).getInt();
-        int B = ByteBuffer.wrap(block, 4, 4).getInt();
-        int C = ByteBuffer.wrap(block, 8, 4).getInt();
-        int D = ByteBuffer.wrap(block, 12, 4).getInt();
+    private void encrypt(byte[] in, int inOff, byte[] out, int outOff, int[] S) {
+        int A = readInt(in, inOff);
+        int B = readInt(in, inOff + 4);
+        int C = readInt(in, inOff + 8);
+        int D = readInt(in, inOff + 12);
 
         B += S[0];
         D += S[1];
@@ -87,16 +143,17 @@ public class RC6 implements CipherAlgorithms {
         A += S[2 * R + 2];
         C += S[2 * R + 3];
 
-        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
-        buffer.putInt(A).putInt(B).putInt(C).putInt(D);
-        return buffer.array();
+        writeInt(out, outOff, A);
+        writeInt(out, outOff + 4, B);
+        writeInt(out, outOff + 8, C);
+        writeInt(out, outOff + 12, D);
     }
 
-    private byte[] decrypt(byte[] block, int[] S) {
-        int A = ByteBuffer.wrap(block, 0, 4).getInt();
-        int B = ByteBuffer.wrap(block, 4, 4).getInt();
-        int C = ByteBuffer.wrap(block, 8, 4).getInt();
-        int D = ByteBuffer.wrap(block, 12, 4).getInt();
+    private void decrypt(byte[] in, int inOff, byte[] out, int outOff, int[] S) {
+        int A = readInt(in, inOff);
+        int B = readInt(in, inOff + 4);
+        int C = readInt(in, inOff + 8);
+        int D = readInt(in, inOff + 12);
 
         C -= S[2 * R + 3];
         A -= S[2 * R + 2];
@@ -117,9 +174,101 @@ public class RC6 implements CipherAlgorithms {
         B -= S[0];
         D -= S[1];
 
-        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
-        buffer.putInt(A).putInt(B).putInt(C).putInt(D);
-        return buffer.array();
+        writeInt(out, outOff, A);
+        writeInt(out, outOff + 4, B);
+        writeInt(out, outOff + 8, C);
+        writeInt(out, outOff + 12, D);
+    }
+
+    private void encrypt4(byte[] in, int inOff, byte[] out, int outOff, int[] S) {
+        int A0 = readInt(in, inOff), B0 = readInt(in, inOff + 4), C0 = readInt(in, inOff + 8), D0 = readInt(in, inOff + 12);
+        int A1 = readInt(in, inOff + 16), B1 = readInt(in, inOff + 20), C1 = readInt(in, inOff + 24), D1 = readInt(in, inOff + 28);
+        int A2 = readInt(in, inOff + 32), B2 = readInt(in, inOff + 36), C2 = readInt(in, inOff + 40), D2 = readInt(in, inOff + 44);
+        int A3 = readInt(in, inOff + 48), B3 = readInt(in, inOff + 52), C3 = readInt(in, inOff + 56), D3 = readInt(in, inOff + 60);
+
+        B0 += S[0]; B1 += S[0]; B2 += S[0]; B3 += S[0];
+        D0 += S[1]; D1 += S[1]; D2 += S[1]; D3 += S[1];
+
+        for (int i = 1; i <= R; i++) {
+            int s0 = S[2 * i];
+            int s1 = S[2 * i + 1];
+
+            int t0 = leftRotate((B0 * (2 * B0 + 1)), 5), u0 = leftRotate((D0 * (2 * D0 + 1)), 5);
+            int t1 = leftRotate((B1 * (2 * B1 + 1)), 5), u1 = leftRotate((D1 * (2 * D1 + 1)), 5);
+            int t2 = leftRotate((B2 * (2 * B2 + 1)), 5), u2 = leftRotate((D2 * (2 * D2 + 1)), 5);
+            int t3 = leftRotate((B3 * (2 * B3 + 1)), 5), u3 = leftRotate((D3 * (2 * D3 + 1)), 5);
+
+            int temp0 = leftRotate(A0 ^ t0, u0) + s0;
+            int temp1 = leftRotate(A1 ^ t1, u1) + s0;
+            int temp2 = leftRotate(A2 ^ t2, u2) + s0;
+            int temp3 = leftRotate(A3 ^ t3, u3) + s0;
+
+            A0 = B0; B0 = leftRotate(C0 ^ u0, t0) + s1; C0 = D0; D0 = temp0;
+            A1 = B1; B1 = leftRotate(C1 ^ u1, t1) + s1; C1 = D1; D1 = temp1;
+            A2 = B2; B2 = leftRotate(C2 ^ u2, t2) + s1; C2 = D2; D2 = temp2;
+            A3 = B3; B3 = leftRotate(C3 ^ u3, t3) + s1; C3 = D3; D3 = temp3;
+        }
+
+        A0 += S[2 * R + 2]; A1 += S[2 * R + 2]; A2 += S[2 * R + 2]; A3 += S[2 * R + 2];
+        C0 += S[2 * R + 3]; C1 += S[2 * R + 3]; C2 += S[2 * R + 3]; C3 += S[2 * R + 3];
+
+        writeInt(out, outOff, A0); writeInt(out, outOff + 4, B0); writeInt(out, outOff + 8, C0); writeInt(out, outOff + 12, D0);
+        writeInt(out, outOff + 16, A1); writeInt(out, outOff + 20, B1); writeInt(out, outOff + 24, C1); writeInt(out, outOff + 28, D1);
+        writeInt(out, outOff + 32, A2); writeInt(out, outOff + 36, B2); writeInt(out, outOff + 40, C2); writeInt(out, outOff + 44, D2);
+        writeInt(out, outOff + 48, A3); writeInt(out, outOff + 52, B3); writeInt(out, outOff + 56, C3); writeInt(out, outOff + 60, D3);
+    }
+
+    private void decrypt4(byte[] in, int inOff, byte[] out, int outOff, int[] S) {
+        int A0 = readInt(in, inOff), B0 = readInt(in, inOff + 4), C0 = readInt(in, inOff + 8), D0 = readInt(in, inOff + 12);
+        int A1 = readInt(in, inOff + 16), B1 = readInt(in, inOff + 20), C1 = readInt(in, inOff + 24), D1 = readInt(in, inOff + 28);
+        int A2 = readInt(in, inOff + 32), B2 = readInt(in, inOff + 36), C2 = readInt(in, inOff + 40), D2 = readInt(in, inOff + 44);
+        int A3 = readInt(in, inOff + 48), B3 = readInt(in, inOff + 52), C3 = readInt(in, inOff + 56), D3 = readInt(in, inOff + 60);
+
+        C0 -= S[2 * R + 3]; C1 -= S[2 * R + 3]; C2 -= S[2 * R + 3]; C3 -= S[2 * R + 3];
+        A0 -= S[2 * R + 2]; A1 -= S[2 * R + 2]; A2 -= S[2 * R + 2]; A3 -= S[2 * R + 2];
+
+        for (int i = R; i >= 1; i--) {
+            int s0 = S[2 * i];
+            int s1 = S[2 * i + 1];
+
+            // (A, B, C, D) = (D, A, B, C)
+            int temp0 = D0; D0 = C0; C0 = B0; B0 = A0; A0 = temp0;
+            int temp1 = D1; D1 = C1; C1 = B1; B1 = A1; A1 = temp1;
+            int temp2 = D2; D2 = C2; C2 = B2; B2 = A2; A2 = temp2;
+            int temp3 = D3; D3 = C3; C3 = B3; B3 = A3; A3 = temp3;
+
+            int u0 = leftRotate((D0 * (2 * D0 + 1)), 5), t0 = leftRotate((B0 * (2 * B0 + 1)), 5);
+            int u1 = leftRotate((D1 * (2 * D1 + 1)), 5), t1 = leftRotate((B1 * (2 * B1 + 1)), 5);
+            int u2 = leftRotate((D2 * (2 * D2 + 1)), 5), t2 = leftRotate((B2 * (2 * B2 + 1)), 5);
+            int u3 = leftRotate((D3 * (2 * D3 + 1)), 5), t3 = leftRotate((B3 * (2 * B3 + 1)), 5);
+
+            C0 = rightRotate(C0 - s1, t0) ^ u0; A0 = rightRotate(A0 - s0, u0) ^ t0;
+            C1 = rightRotate(C1 - s1, t1) ^ u1; A1 = rightRotate(A1 - s0, u1) ^ t1;
+            C2 = rightRotate(C2 - s1, t2) ^ u2; A2 = rightRotate(A2 - s0, u2) ^ t2;
+            C3 = rightRotate(C3 - s1, t3) ^ u3; A3 = rightRotate(A3 - s0, u3) ^ t3;
+        }
+
+        B0 -= S[0]; B1 -= S[0]; B2 -= S[0]; B3 -= S[0];
+        D0 -= S[1]; D1 -= S[1]; D2 -= S[1]; D3 -= S[1];
+
+        writeInt(out, outOff, A0); writeInt(out, outOff + 4, B0); writeInt(out, outOff + 8, C0); writeInt(out, outOff + 12, D0);
+        writeInt(out, outOff + 16, A1); writeInt(out, outOff + 20, B1); writeInt(out, outOff + 24, C1); writeInt(out, outOff + 28, D1);
+        writeInt(out, outOff + 32, A2); writeInt(out, outOff + 36, B2); writeInt(out, outOff + 40, C2); writeInt(out, outOff + 44, D2);
+        writeInt(out, outOff + 48, A3); writeInt(out, outOff + 52, B3); writeInt(out, outOff + 56, C3); writeInt(out, outOff + 60, D3);
+    }
+
+    private static int readInt(byte[] block, int offset) {
+        return (block[offset] & 0xff) << 24
+                | (block[offset + 1] & 0xff) << 16
+                | (block[offset + 2] & 0xff) << 8
+                | (block[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] block, int offset, int value) {
+        block[offset] = (byte) (value >>> 24);
+        block[offset + 1] = (byte) (value >>> 16);
+        block[offset + 2] = (byte) (value >>> 8);
+        block[offset + 3] = (byte) value;
     }
 
     private int leftRotate(int value, int bits) {
@@ -0,0 +1,228 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Полосный вариант RC6 для больших объёмов в ECB/CTR.
+// До LANES блоков раскладываются по четырём массивам слов (j-й элемент - слово j-го блока),
+// и каждый раунд - это один цикл по полосам без ветвлений, который C2 векторизует сам.
+// Одиночные блоки и всё, что не набирает MIN_LANES, шифрует обычный RC6.
+public class RC6Lanes implements CipherAlgorithms {
+    public static final int LANES = 64;
+    private static final int MIN_LANES = 4;
+    private static final int R = 20;
+    private static final int BLOCK_SIZE = 16;
+
+    private final RC6 scalar;
+    private final int[] S;
+
+    public RC6Lanes(RC6 scalar) {
+        this.scalar = scalar;
+        this.S = scalar.getRoundKeys();
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public byte[] encryptBlock(byte[] inputBlock) {
+        return scalar.encryptBlock(inputBlock);
+    }
+
+    @Override
+    public byte[] decryptBlock(byte[] inputBlock) {
+        return scalar.decryptBlock(inputBlock);
+    }
+
+    @Override
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        scalar.encryptBlock(in, inOff, out, outOff);
+    }
+
+    @Override
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        scalar.decryptBlock(in, inOff, out, outOff);
+    }
+
+    @Override
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        if (count < MIN_LANES) {
+            scalar.encryptBlocks(src, srcOff, dst, dstOff, count);
+            return;
+        }
+
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            encrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        if (count < MIN_LANES) {
+            scalar.decryptBlocks(src, srcOff, dst, dstOff, count);
+            return;
+        }
+
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            decrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    // из буфера полосы собираются при любом числе блоков: одиночные блоки тоже не копируются в кучу
+    @Override
+    public void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            encrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            decrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    private void encrypt(int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++) {
+            B[j] += S[0];
+            D[j] += S[1];
+        }
+
+        for (int i = 1; i <= R; i++) {
+            int s0 = S[2 * i];
+            int s1 = S[2 * i + 1];
+
+            // (A, B, C, D) = (B, C, D, A) сразу при записи обратно в полосы
+            for (int j = 0; j < n; j++) {
+                int b = B[j];
+                int d = D[j];
+                int t = Integer.rotateLeft(b * (2 * b + 1), 5);
+                int u = Integer.rotateLeft(d * (2 * d + 1), 5);
+                int a = Integer.rotateLeft(A[j] ^ t, u) + s0;
+                int c = Integer.rotateLeft(C[j] ^ u, t) + s1;
+
+                A[j] = b;
+                B[j] = c;
+                C[j] = d;
+                D[j] = a;
+            }
+        }
+
+        for (int j = 0; j < n; j++) {
+            A[j] += S[2 * R + 2];
+            C[j] += S[2 * R + 3];
+        }
+    }
+
+    private void decrypt(int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++) {
+            C[j] -= S[2 * R + 3];
+            A[j] -= S[2 * R + 2];
+        }
+
+        for (int i = R; i >= 1; i--) {
+            int s0 = S[2 * i];
+            int s1 = S[2 * i + 1];
+
+            // (A, B, C, D) = (D, A, B, C) сразу при чтении из полос
+            for (int j = 0; j < n; j++) {
+                int a = D[j];
+                int b = A[j];
+                int c = B[j];
+                int d = C[j];
+                int u = Integer.rotateLeft(d * (2 * d + 1), 5);
+                int t = Integer.rotateLeft(b * (2 * b + 1), 5);
+
+                A[j] = Integer.rotateRight(a - s0, u) ^ t;
+                B[j] = b;
+                C[j] = Integer.rotateRight(c - s1, t) ^ u;
+                D[j] = d;
+            }
+        }
+
+        for (int j = 0; j < n; j++) {
+            B[j] -= S[0];
+            D[j] -= S[1];
+        }
+    }
+
+    private static void load(byte[] src, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            A[j] = readInt(src, offset);
+            B[j] = readInt(src, offset + 4);
+            C[j] = readInt(src, offset + 8);
+            D[j] = readInt(src, offset + 12);
+        }
+    }
+
+    private static void store(byte[] dst, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            writeInt(dst, offset, A[j]);
+            writeInt(dst, offset + 4, B[j]);
+            writeInt(dst, offset + 8, C[j]);
+            writeInt(dst, offset + 12, D[j]);
+        }
+    }
+
+    private static void load(ByteBuffer src, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            A[j] = readInt(src, offset);
+            B[j] = readInt(src, offset + 4);
+            C[j] = readInt(src, offset + 8);
+            D[j] = readInt(src, offset + 12);
+        }
+    }
+
+    private static void store(ByteBuffer dst, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            writeInt(dst, offset, A[j]);
+            writeInt(dst, offset + 4, B[j]);
+            writeInt(dst, offset + 8, C[j]);
+            writeInt(dst, offset + 12, D[j]);
+        }
+    }
+
+    private static int readInt(ByteBuffer block, int offset) {
+        int value = block.getInt(offset);
+        return block.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static void writeInt(ByteBuffer block, int offset, int value) {
+        block.putInt(offset, block.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    private static int readInt(byte[] block, int offset) {
+        return (block[offset] & 0xff) << 24
+                | (block[offset + 1] & 0xff) << 16
+                | (block[offset + 2] & 0xff) << 8
+                | (block[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] block, int offset, int value) {
+        block[offset] = (byte) (value >>> 24);
+        block[offset + 1] = (byte) (value >>> 16);
+        block[offset + 2] = (byte) (value >>> 8);
+        block[offset + 3] = (byte) value;
+    }
+}
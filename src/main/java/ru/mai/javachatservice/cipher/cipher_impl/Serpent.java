@@ -36,15 +36,9 @@ public class Serpent implements CipherAlgorithms {
         byte[] encryptBlock = Permutations.permutate(inputBlock, IP, Permutations.RuleIndex.LeftZero);
 
         for (int i = 0; i < 32; i++) {
+            //XOR с ключом и замена обеих половин байта с помощью s блока одним обращением к таблице
             for (int j = 0; j < 16; j++) {
-                encryptBlock[j] = (byte) (roundKeys[i][j] ^ encryptBlock[j]);
-            }
-
-            //заменяем каждую половину байта с помощью s блока
-            for (int j = 0; j < 16; j++) {
-                byte tempL = (byte) (encryptBlock[j] & 0x0f);
-                byte tempR = (byte) ((encryptBlock[j] & 0xf0) >> 4);
-                encryptBlock[j] = (byte) ((serpentService.replaceFromSBox(tempL, i % 8) << 4) | serpentService.replaceFromSBox(tempR, i % 8) & 0xff);
+                encryptBlock[j] = serpentService.replaceByteFromSBox((byte) (roundKeys[i][j] ^ encryptBlock[j]), i % 8);
             }
 
             if (i != 31) {
@@ -73,13 +67,7 @@ public class Serpent implements CipherAlgorithms {
             }
 
             for (int j = 0; j < 16; j++) {
-                byte tempL = (byte) (inputBlock[j] & 0x0f);
-                byte tempR = (byte) ((inputBlock[j] & 0xf0) >> 4);
-                inputBlock[j] = (byte) ((serpentService.replaceFromInverseSBox(tempL, i % 8) << 4) | serpentService.replaceFromInverseSBox(tempR, i % 8) & 0xff);
-            }
-
-            for (int j = 0; j < 16; j++) {
-                inputBlock[j] = (byte) (roundKeys[i][j] ^ inputBlock[j]);
+                inputBlock[j] = (byte) (serpentService.replaceByteFromInverseSBox(inputBlock[j], i % 8) ^ roundKeys[i][j]);
             }
         }
 
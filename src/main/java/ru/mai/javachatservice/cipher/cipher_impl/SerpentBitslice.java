@@ -0,0 +1,491 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static ru.mai.javachatservice.cipher.cipher_impl.SerpentService.S_BOX_TABLE;
+
+// Serpent, у которого состояние все 32 раунда лежит в четырёх int.
+// Результат совпадает с Serpent бит в бит: IP/FP не выполняются явно, т.к. в "словном" представлении
+// блока каждый столбец из 4 бит (по одному из каждого слова) и есть полубайт, который Serpent подаёт в S-блок,
+// а перестановка соседних полубайтов после замены превращается в обмен соседних бит внутри слова.
+// Слова хранятся в long: младшая половина - один блок, старшая - следующий, так что схемы S-блоков
+// за один проход обрабатывают сразу два независимых блока.
+public class SerpentBitslice implements CipherAlgorithms {
+    private static final int ROUNDS = 32;
+    private static final int BLOCK_SIZE = 16;
+
+    // 33 раундовых ключа по 4 слова в порядке a, b, c, d (a - младшие биты полубайта, байты 12..15 блока),
+    // каждое слово продублировано в обеих половинах long
+    private final long[] roundKeys;
+    // для буферов вне кучи, создаётся при первом обращении; гонка безобидна - движок неизменяемый
+    private SerpentLanes lanes;
+
+    public SerpentBitslice(int lenKeyInBits, int[] key) {
+        if (!(lenKeyInBits == 128 || lenKeyInBits == 192 || lenKeyInBits == 256)) {
+            throw new IllegalArgumentException("Error len key in bits!");
+        }
+
+        this.roundKeys = expandKey(lenKeyInBits, Arrays.copyOf(key, key.length));
+    }
+
+    // из уже развёрнутых раундовых ключей, для KeyScheduleCache
+    SerpentBitslice(long[] roundKeys) {
+        this.roundKeys = roundKeys;
+    }
+
+    // для SerpentLanes и KeyScheduleCache
+    long[] getRoundKeys() {
+        return roundKeys;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public byte[] encryptBlock(byte[] inputBlock) {
+        byte[] result = new byte[BLOCK_SIZE];
+        encryptBlock(inputBlock, 0, result, 0);
+        return result;
+    }
+
+    @Override
+    public byte[] decryptBlock(byte[] inputBlock) {
+        byte[] result = new byte[BLOCK_SIZE];
+        decryptBlock(inputBlock, 0, result, 0);
+        return result;
+    }
+
+    @Override
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        encrypt(in, inOff, out, outOff, 1);
+    }
+
+    @Override
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        decrypt(in, inOff, out, outOff, 1);
+    }
+
+    @Override
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        for (; count >= 2; count -= 2, srcOff += 2 * BLOCK_SIZE, dstOff += 2 * BLOCK_SIZE) {
+            encrypt(src, srcOff, dst, dstOff, 2);
+        }
+        if (count == 1) {
+            encrypt(src, srcOff, dst, dstOff, 1);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        for (; count >= 2; count -= 2, srcOff += 2 * BLOCK_SIZE, dstOff += 2 * BLOCK_SIZE) {
+            decrypt(src, srcOff, dst, dstOff, 2);
+        }
+        if (count == 1) {
+            decrypt(src, srcOff, dst, dstOff, 1);
+        }
+    }
+
+    // слова из буфера читает полосный движок
+    @Override
+    public void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        getLanes().encryptBlocks(src, srcOff, dst, dstOff, count);
+    }
+
+    @Override
+    public void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        getLanes().decryptBlocks(src, srcOff, dst, dstOff, count);
+    }
+
+    private SerpentLanes getLanes() {
+        SerpentLanes result = lanes;
+        if (result == null) {
+            result = new SerpentLanes(this);
+            lanes = result;
+        }
+
+        return result;
+    }
+
+    // count - 1 или 2 подряд идущих блока
+    private void encrypt(byte[] in, int inOff, byte[] out, int outOff, int count) {
+        long d = readLanes(in, inOff, count);
+        long c = readLanes(in, inOff + 4, count);
+        long b = readLanes(in, inOff + 8, count);
+        long a = readLanes(in, inOff + 12, count);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            int k = 4 * i;
+            a ^= roundKeys[k];
+            b ^= roundKeys[k + 1];
+            c ^= roundKeys[k + 2];
+            d ^= roundKeys[k + 3];
+
+            long y0;
+            long y1;
+            long y2;
+            long y3;
+
+            switch (i & 7) {
+                case 0 -> {
+                    long t1 = a ^ d;
+                    long t3 = c ^ t1;
+                    long t4 = b ^ t3;
+                    y3 = (a & d) ^ t4;
+                    long t7 = a ^ (b & t1);
+                    y2 = t4 ^ (c | t7);
+                    long t12 = y3 & (t3 ^ t7);
+                    y1 = (~t3) ^ t12;
+                    y0 = t12 ^ (~t7);
+                }
+                case 1 -> {
+                    long t2 = b ^ (~a);
+                    long t5 = c ^ (a | t2);
+                    y2 = d ^ t5;
+                    long t7 = b ^ (d | t2);
+                    long t8 = t2 ^ y2;
+                    y3 = t8 ^ (t5 & t7);
+                    long t11 = t5 ^ t7;
+                    y1 = y3 ^ t11;
+                    y0 = t5 ^ (t8 & t11);
+                }
+                case 2 -> {
+                    long t1 = ~a;
+                    long t2 = b ^ d;
+                    long t3 = c & t1;
+                    y0 = t2 ^ t3;
+                    long t5 = c ^ t1;
+                    long t6 = c ^ y0;
+                    long t7 = b & t6;
+                    y3 = t5 ^ t7;
+                    y2 = a ^ ((d | t7) & (y0 | t5));
+                    y1 = (t2 ^ y3) ^ (y2 ^ (d | t1));
+                }
+                case 3 -> {
+                    long t1 = a ^ b;
+                    long t2 = a & c;
+                    long t3 = a | d;
+                    long t4 = c ^ d;
+                    long t5 = t1 & t3;
+                    long t6 = t2 | t5;
+                    y2 = t4 ^ t6;
+                    long t8 = b ^ t3;
+                    long t9 = t6 ^ t8;
+                    long t10 = t4 & t9;
+                    y0 = t1 ^ t10;
+                    long t12 = y2 & y0;
+                    y1 = t9 ^ t12;
+                    y3 = (b | d) ^ (t4 ^ t12);
+                }
+                case 4 -> {
+                    long t1 = a ^ d;
+                    long t2 = d & t1;
+                    long t3 = c ^ t2;
+                    long t4 = b | t3;
+                    y3 = t1 ^ t4;
+                    long t6 = ~b;
+                    long t7 = t1 | t6;
+                    y0 = t3 ^ t7;
+                    long t9 = a & y0;
+                    long t10 = t1 ^ t6;
+                    long t11 = t4 & t10;
+                    y2 = t9 ^ t11;
+                    y1 = (a ^ t3) ^ (t10 & y2);
+                }
+                case 5 -> {
+                    long t1 = ~a;
+                    long t2 = a ^ b;
+                    long t3 = a ^ d;
+                    long t4 = c ^ t1;
+                    long t5 = t2 | t3;
+                    y0 = t4 ^ t5;
+                    long t7 = d & y0;
+                    long t8 = t2 ^ y0;
+                    y1 = t7 ^ t8;
+                    long t10 = t1 | y0;
+                    long t11 = t2 | t7;
+                    long t12 = t3 ^ t10;
+                    y2 = t11 ^ t12;
+                    y3 = (b ^ t7) ^ (y1 & t12);
+                }
+                case 6 -> {
+                    long t1 = ~a;
+                    long t2 = a ^ d;
+                    long t3 = b ^ t2;
+                    long t4 = t1 | t2;
+                    long t5 = c ^ t4;
+                    y1 = b ^ t5;
+                    long t7 = t2 | y1;
+                    long t8 = d ^ t7;
+                    long t9 = t5 & t8;
+                    y2 = t3 ^ t9;
+                    long t11 = t5 ^ t8;
+                    y0 = y2 ^ t11;
+                    y3 = (~t5) ^ (t3 & t11);
+                }
+                case 7 -> {
+                    long t1 = b ^ c;
+                    long t2 = c & t1;
+                    long t3 = d ^ t2;
+                    long t4 = a ^ t3;
+                    long t5 = d | t1;
+                    long t6 = t4 & t5;
+                    y1 = b ^ t6;
+                    long t8 = t3 | y1;
+                    long t9 = a & t4;
+                    y3 = t1 ^ t9;
+                    long t11 = t4 ^ t8;
+                    long t12 = y3 & t11;
+                    y2 = t3 ^ t12;
+                    y0 = (~t11) ^ (y3 & y2);
+                }
+                default -> throw new IllegalStateException("Unexpected S-box: " + (i & 7));
+            }
+
+            a = swapNeighbourBits(y0);
+            b = swapNeighbourBits(y1);
+            c = swapNeighbourBits(y2);
+            d = swapNeighbourBits(y3);
+        }
+
+        int k = 4 * ROUNDS;
+        a ^= roundKeys[k];
+        b ^= roundKeys[k + 1];
+        c ^= roundKeys[k + 2];
+        d ^= roundKeys[k + 3];
+
+        writeLanes(out, outOff, d, count);
+        writeLanes(out, outOff + 4, c, count);
+        writeLanes(out, outOff + 8, b, count);
+        writeLanes(out, outOff + 12, a, count);
+    }
+
+    private void decrypt(byte[] in, int inOff, byte[] out, int outOff, int count) {
+        long d = readLanes(in, inOff, count);
+        long c = readLanes(in, inOff + 4, count);
+        long b = readLanes(in, inOff + 8, count);
+        long a = readLanes(in, inOff + 12, count);
+
+        int k = 4 * ROUNDS;
+        a ^= roundKeys[k];
+        b ^= roundKeys[k + 1];
+        c ^= roundKeys[k + 2];
+        d ^= roundKeys[k + 3];
+
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            a = swapNeighbourBits(a);
+            b = swapNeighbourBits(b);
+            c = swapNeighbourBits(c);
+            d = swapNeighbourBits(d);
+
+            long y0;
+            long y1;
+            long y2;
+            long y3;
+
+            switch (i & 7) {
+                case 0 -> {
+                    long t1 = ~a;
+                    long t2 = a ^ b;
+                    long t4 = d ^ (t1 | t2);
+                    long t5 = c ^ t4;
+                    y2 = t2 ^ t5;
+                    long t8 = t1 ^ (d & t2);
+                    y1 = t4 ^ (y2 & t8);
+                    y3 = (a & t4) ^ (t5 | y1);
+                    y0 = y3 ^ (t5 ^ t8);
+                }
+                case 1 -> {
+                    long t1 = b ^ d;
+                    long t3 = a ^ (b & t1);
+                    long t4 = t1 ^ t3;
+                    y3 = c ^ t4;
+                    long t7 = b ^ (t1 & t3);
+                    long t8 = y3 | t7;
+                    y1 = t3 ^ t8;
+                    long t10 = ~y1;
+                    long t11 = y3 ^ t7;
+                    y0 = t10 ^ t11;
+                    y2 = t4 ^ (t10 | t11);
+                }
+                case 2 -> {
+                    long t1 = b ^ d;
+                    long t2 = ~t1;
+                    long t3 = a ^ c;
+                    long t4 = c ^ t1;
+                    long t5 = b & t4;
+                    y0 = t3 ^ t5;
+                    long t7 = a | t2;
+                    long t8 = d ^ t7;
+                    long t9 = t3 | t8;
+                    y3 = t1 ^ t9;
+                    long t11 = ~t4;
+                    long t12 = y0 | y3;
+                    y1 = t11 ^ t12;
+                    y2 = (d & t11) ^ (t3 ^ t12);
+                }
+                case 3 -> {
+                    long t1 = a | b;
+                    long t2 = b ^ c;
+                    long t3 = b & t2;
+                    long t4 = a ^ t3;
+                    long t5 = c ^ t4;
+                    long t6 = d | t4;
+                    y0 = t2 ^ t6;
+                    long t8 = t2 | t6;
+                    long t9 = d ^ t8;
+                    y2 = t5 ^ t9;
+                    long t11 = t1 ^ t9;
+                    long t12 = y0 & t11;
+                    y3 = t4 ^ t12;
+                    y1 = y3 ^ (y0 ^ t11);
+                }
+                case 4 -> {
+                    long t1 = c | d;
+                    long t2 = a & t1;
+                    long t3 = b ^ t2;
+                    long t4 = a & t3;
+                    long t5 = c ^ t4;
+                    y1 = d ^ t5;
+                    long t7 = ~a;
+                    long t8 = t5 & y1;
+                    y3 = t3 ^ t8;
+                    long t10 = y1 | t7;
+                    long t11 = d ^ t10;
+                    y0 = y3 ^ t11;
+                    y2 = (t3 & t11) ^ (y1 ^ t7);
+                }
+                case 5 -> {
+                    long t1 = ~c;
+                    long t2 = b & t1;
+                    long t3 = d ^ t2;
+                    long t4 = a & t3;
+                    long t5 = b ^ t1;
+                    y3 = t4 ^ t5;
+                    long t7 = b | y3;
+                    long t8 = a & t7;
+                    y1 = t3 ^ t8;
+                    long t10 = a | d;
+                    long t11 = t1 ^ t7;
+                    y0 = t10 ^ t11;
+                    y2 = (b & t10) ^ (t4 | (a ^ c));
+                }
+                case 6 -> {
+                    long t1 = ~a;
+                    long t2 = a ^ b;
+                    long t3 = c ^ t2;
+                    long t4 = c | t1;
+                    long t5 = d ^ t4;
+                    y1 = t3 ^ t5;
+                    long t7 = t3 & t5;
+                    long t8 = t2 ^ t7;
+                    long t9 = b | t8;
+                    y3 = t5 ^ t9;
+                    long t11 = b | y3;
+                    y0 = t8 ^ t11;
+                    y2 = (d & t1) ^ (t3 ^ t11);
+                }
+                case 7 -> {
+                    long t3 = c | (a & b);
+                    long t4 = d & (a | b);
+                    y3 = t3 ^ t4;
+                    long t6 = ~d;
+                    long t7 = b ^ t4;
+                    long t9 = t7 | (y3 ^ t6);
+                    y1 = a ^ t9;
+                    y0 = (c ^ t7) ^ (d | y1);
+                    y2 = (t3 ^ y1) ^ (y0 ^ (a & y3));
+                }
+                default -> throw new IllegalStateException("Unexpected S-box: " + (i & 7));
+            }
+
+            k = 4 * i;
+            a = y0 ^ roundKeys[k];
+            b = y1 ^ roundKeys[k + 1];
+            c = y2 ^ roundKeys[k + 2];
+            d = y3 ^ roundKeys[k + 3];
+        }
+
+        writeLanes(out, outOff, d, count);
+        writeLanes(out, outOff + 4, c, count);
+        writeLanes(out, outOff + 8, b, count);
+        writeLanes(out, outOff + 12, a, count);
+    }
+
+    private static long[] expandKey(int lenKeyInBits, int[] key) {
+        SerpentService serpentService = new SerpentService(lenKeyInBits);
+        int[] w = serpentService.generatePreRoundKeys(serpentService.paddingKey(key));
+
+        // подключи k_i так же, как в SerpentService.generateRoundKeys: каждая 16-битная половина слова
+        // переставляется по таблице S-блока с номером 3, 2, 1, 0, 7, 6, ...
+        int[] k = new int[w.length];
+        for (int i = 0; i < w.length; i++) {
+            byte[] table = S_BOX_TABLE[(3 - i % 8 + 8) % 8];
+            k[i] = permutateHalf(w[i] >>> 16, table) << 16 | permutateHalf(w[i] & 0xffff, table);
+        }
+
+        // переводим K_i в то же представление, что и состояние: бит s слова r - это бит 4s + r ключа K_i
+        long[] result = new long[(ROUNDS + 1) * 4];
+        for (int i = 0; i <= ROUNDS; i++) {
+            for (int r = 0; r < 4; r++) {
+                int word = 0;
+                for (int s = 0; s < 32; s++) {
+                    int bit = (k[4 * i + s / 8] >>> (31 - (4 * (s % 8) + r))) & 1;
+                    word |= bit << (31 - s);
+                }
+                result[4 * i + 3 - r] = (word & 0xffffffffL) | ((long) word << 32);
+            }
+        }
+
+        return result;
+    }
+
+    // бит t результата (считая со старшего) - это бит table[t] входа
+    private static int permutateHalf(int value, byte[] table) {
+        int result = 0;
+        for (int t = 0; t < 16; t++) {
+            result |= ((value >>> (15 - table[t])) & 1) << (15 - t);
+        }
+
+        return result;
+    }
+
+    private static long swapNeighbourBits(long value) {
+        return ((value & 0x5555555555555555L) << 1) | ((value >>> 1) & 0x5555555555555555L);
+    }
+
+    // слово блока в младшую половину, слово следующего блока (если он есть) - в старшую
+    private static long readLanes(byte[] block, int offset, int count) {
+        long value = readInt(block, offset) & 0xffffffffL;
+        if (count == 2) {
+            value |= (long) readInt(block, offset + BLOCK_SIZE) << 32;
+        }
+
+        return value;
+    }
+
+    private static void writeLanes(byte[] block, int offset, long value, int count) {
+        writeInt(block, offset, (int) value);
+        if (count == 2) {
+            writeInt(block, offset + BLOCK_SIZE, (int) (value >>> 32));
+        }
+    }
+
+    private static int readInt(byte[] block, int offset) {
+        return (block[offset] & 0xff) << 24
+                | (block[offset + 1] & 0xff) << 16
+                | (block[offset + 2] & 0xff) << 8
+                | (block[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] block, int offset, int value) {
+        block[offset] = (byte) (value >>> 24);
+        block[offset + 1] = (byte) (value >>> 16);
+        block[offset + 2] = (byte) (value >>> 8);
+        block[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,579 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Полосный вариант SerpentBitslice для больших объёмов в ECB/CTR.
+// До LANES блоков раскладываются по четырём массивам слов (j-й элемент - слово j-го блока),
+// и каждый раунд - это один цикл по полосам без ветвлений, который C2 векторизует сам.
+// Одиночные блоки и всё, что не набирает MIN_LANES, шифрует обычный SerpentBitslice.
+public class SerpentLanes implements CipherAlgorithms {
+    public static final int LANES = 64;
+    private static final int MIN_LANES = 4;
+    private static final int ROUNDS = 32;
+    private static final int BLOCK_SIZE = 16;
+
+    private final SerpentBitslice scalar;
+    private final int[] roundKeys;
+
+    public SerpentLanes(SerpentBitslice scalar) {
+        this.scalar = scalar;
+
+        // в SerpentBitslice слово ключа продублировано в обеих половинах long, здесь нужна одна
+        long[] keys = scalar.getRoundKeys();
+        this.roundKeys = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            roundKeys[i] = (int) keys[i];
+        }
+    }
+
+    @Override
+    public int getBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    public byte[] encryptBlock(byte[] inputBlock) {
+        return scalar.encryptBlock(inputBlock);
+    }
+
+    @Override
+    public byte[] decryptBlock(byte[] inputBlock) {
+        return scalar.decryptBlock(inputBlock);
+    }
+
+    @Override
+    public void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        scalar.encryptBlock(in, inOff, out, outOff);
+    }
+
+    @Override
+    public void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        scalar.decryptBlock(in, inOff, out, outOff);
+    }
+
+    @Override
+    public void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        if (count < MIN_LANES) {
+            scalar.encryptBlocks(src, srcOff, dst, dstOff, count);
+            return;
+        }
+
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            encrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        if (count < MIN_LANES) {
+            scalar.decryptBlocks(src, srcOff, dst, dstOff, count);
+            return;
+        }
+
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            decrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    // из буфера полосы собираются при любом числе блоков: одиночные блоки тоже не копируются в кучу
+    @Override
+    public void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            encrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int[] A = new int[LANES], B = new int[LANES], C = new int[LANES], D = new int[LANES];
+        for (; count > 0; count -= LANES, srcOff += LANES * BLOCK_SIZE, dstOff += LANES * BLOCK_SIZE) {
+            int n = Math.min(count, LANES);
+            load(src, srcOff, A, B, C, D, n);
+            decrypt(A, B, C, D, n);
+            store(dst, dstOff, A, B, C, D, n);
+        }
+    }
+
+    // раунд: XOR с ключом, S-блок, обмен соседних бит - всё за один проход по полосам
+    private void encrypt(int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int i = 0; i < ROUNDS; i++) {
+            int ka = roundKeys[4 * i];
+            int kb = roundKeys[4 * i + 1];
+            int kc = roundKeys[4 * i + 2];
+            int kd = roundKeys[4 * i + 3];
+
+            switch (i & 7) {
+                case 0 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = a ^ d;
+                        int t3 = c ^ t1;
+                        int t4 = b ^ t3;
+                        y3 = (a & d) ^ t4;
+                        int t7 = a ^ (b & t1);
+                        y2 = t4 ^ (c | t7);
+                        int t12 = y3 & (t3 ^ t7);
+                        y1 = (~t3) ^ t12;
+                        y0 = t12 ^ (~t7);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 1 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t2 = b ^ (~a);
+                        int t5 = c ^ (a | t2);
+                        y2 = d ^ t5;
+                        int t7 = b ^ (d | t2);
+                        int t8 = t2 ^ y2;
+                        y3 = t8 ^ (t5 & t7);
+                        int t11 = t5 ^ t7;
+                        y1 = y3 ^ t11;
+                        y0 = t5 ^ (t8 & t11);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 2 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = ~a;
+                        int t2 = b ^ d;
+                        int t3 = c & t1;
+                        y0 = t2 ^ t3;
+                        int t5 = c ^ t1;
+                        int t6 = c ^ y0;
+                        int t7 = b & t6;
+                        y3 = t5 ^ t7;
+                        y2 = a ^ ((d | t7) & (y0 | t5));
+                        y1 = (t2 ^ y3) ^ (y2 ^ (d | t1));
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 3 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = a ^ b;
+                        int t2 = a & c;
+                        int t3 = a | d;
+                        int t4 = c ^ d;
+                        int t5 = t1 & t3;
+                        int t6 = t2 | t5;
+                        y2 = t4 ^ t6;
+                        int t8 = b ^ t3;
+                        int t9 = t6 ^ t8;
+                        int t10 = t4 & t9;
+                        y0 = t1 ^ t10;
+                        int t12 = y2 & y0;
+                        y1 = t9 ^ t12;
+                        y3 = (b | d) ^ (t4 ^ t12);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 4 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = a ^ d;
+                        int t2 = d & t1;
+                        int t3 = c ^ t2;
+                        int t4 = b | t3;
+                        y3 = t1 ^ t4;
+                        int t6 = ~b;
+                        int t7 = t1 | t6;
+                        y0 = t3 ^ t7;
+                        int t9 = a & y0;
+                        int t10 = t1 ^ t6;
+                        int t11 = t4 & t10;
+                        y2 = t9 ^ t11;
+                        y1 = (a ^ t3) ^ (t10 & y2);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 5 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = ~a;
+                        int t2 = a ^ b;
+                        int t3 = a ^ d;
+                        int t4 = c ^ t1;
+                        int t5 = t2 | t3;
+                        y0 = t4 ^ t5;
+                        int t7 = d & y0;
+                        int t8 = t2 ^ y0;
+                        y1 = t7 ^ t8;
+                        int t10 = t1 | y0;
+                        int t11 = t2 | t7;
+                        int t12 = t3 ^ t10;
+                        y2 = t11 ^ t12;
+                        y3 = (b ^ t7) ^ (y1 & t12);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 6 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = ~a;
+                        int t2 = a ^ d;
+                        int t3 = b ^ t2;
+                        int t4 = t1 | t2;
+                        int t5 = c ^ t4;
+                        y1 = b ^ t5;
+                        int t7 = t2 | y1;
+                        int t8 = d ^ t7;
+                        int t9 = t5 & t8;
+                        y2 = t3 ^ t9;
+                        int t11 = t5 ^ t8;
+                        y0 = y2 ^ t11;
+                        y3 = (~t5) ^ (t3 & t11);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                case 7 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = A[j] ^ ka, b = B[j] ^ kb, c = C[j] ^ kc, d = D[j] ^ kd;
+                        int y0, y1, y2, y3;
+                        int t1 = b ^ c;
+                        int t2 = c & t1;
+                        int t3 = d ^ t2;
+                        int t4 = a ^ t3;
+                        int t5 = d | t1;
+                        int t6 = t4 & t5;
+                        y1 = b ^ t6;
+                        int t8 = t3 | y1;
+                        int t9 = a & t4;
+                        y3 = t1 ^ t9;
+                        int t11 = t4 ^ t8;
+                        int t12 = y3 & t11;
+                        y2 = t3 ^ t12;
+                        y0 = (~t11) ^ (y3 & y2);
+                        A[j] = swapNeighbourBits(y0);
+                        B[j] = swapNeighbourBits(y1);
+                        C[j] = swapNeighbourBits(y2);
+                        D[j] = swapNeighbourBits(y3);
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected S-box: " + (i & 7));
+            }
+        }
+
+        xorKey(A, B, C, D, n, ROUNDS);
+    }
+
+    private void decrypt(int[] A, int[] B, int[] C, int[] D, int n) {
+        xorKey(A, B, C, D, n, ROUNDS);
+
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            int ka = roundKeys[4 * i];
+            int kb = roundKeys[4 * i + 1];
+            int kc = roundKeys[4 * i + 2];
+            int kd = roundKeys[4 * i + 3];
+
+            switch (i & 7) {
+                case 0 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = ~a;
+                        int t2 = a ^ b;
+                        int t4 = d ^ (t1 | t2);
+                        int t5 = c ^ t4;
+                        y2 = t2 ^ t5;
+                        int t8 = t1 ^ (d & t2);
+                        y1 = t4 ^ (y2 & t8);
+                        y3 = (a & t4) ^ (t5 | y1);
+                        y0 = y3 ^ (t5 ^ t8);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 1 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = b ^ d;
+                        int t3 = a ^ (b & t1);
+                        int t4 = t1 ^ t3;
+                        y3 = c ^ t4;
+                        int t7 = b ^ (t1 & t3);
+                        int t8 = y3 | t7;
+                        y1 = t3 ^ t8;
+                        int t10 = ~y1;
+                        int t11 = y3 ^ t7;
+                        y0 = t10 ^ t11;
+                        y2 = t4 ^ (t10 | t11);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 2 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = b ^ d;
+                        int t2 = ~t1;
+                        int t3 = a ^ c;
+                        int t4 = c ^ t1;
+                        int t5 = b & t4;
+                        y0 = t3 ^ t5;
+                        int t7 = a | t2;
+                        int t8 = d ^ t7;
+                        int t9 = t3 | t8;
+                        y3 = t1 ^ t9;
+                        int t11 = ~t4;
+                        int t12 = y0 | y3;
+                        y1 = t11 ^ t12;
+                        y2 = (d & t11) ^ (t3 ^ t12);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 3 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = a | b;
+                        int t2 = b ^ c;
+                        int t3 = b & t2;
+                        int t4 = a ^ t3;
+                        int t5 = c ^ t4;
+                        int t6 = d | t4;
+                        y0 = t2 ^ t6;
+                        int t8 = t2 | t6;
+                        int t9 = d ^ t8;
+                        y2 = t5 ^ t9;
+                        int t11 = t1 ^ t9;
+                        int t12 = y0 & t11;
+                        y3 = t4 ^ t12;
+                        y1 = y3 ^ (y0 ^ t11);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 4 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = c | d;
+                        int t2 = a & t1;
+                        int t3 = b ^ t2;
+                        int t4 = a & t3;
+                        int t5 = c ^ t4;
+                        y1 = d ^ t5;
+                        int t7 = ~a;
+                        int t8 = t5 & y1;
+                        y3 = t3 ^ t8;
+                        int t10 = y1 | t7;
+                        int t11 = d ^ t10;
+                        y0 = y3 ^ t11;
+                        y2 = (t3 & t11) ^ (y1 ^ t7);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 5 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = ~c;
+                        int t2 = b & t1;
+                        int t3 = d ^ t2;
+                        int t4 = a & t3;
+                        int t5 = b ^ t1;
+                        y3 = t4 ^ t5;
+                        int t7 = b | y3;
+                        int t8 = a & t7;
+                        y1 = t3 ^ t8;
+                        int t10 = a | d;
+                        int t11 = t1 ^ t7;
+                        y0 = t10 ^ t11;
+                        y2 = (b & t10) ^ (t4 | (a ^ c));
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 6 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t1 = ~a;
+                        int t2 = a ^ b;
+                        int t3 = c ^ t2;
+                        int t4 = c | t1;
+                        int t5 = d ^ t4;
+                        y1 = t3 ^ t5;
+                        int t7 = t3 & t5;
+                        int t8 = t2 ^ t7;
+                        int t9 = b | t8;
+                        y3 = t5 ^ t9;
+                        int t11 = b | y3;
+                        y0 = t8 ^ t11;
+                        y2 = (d & t1) ^ (t3 ^ t11);
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                case 7 -> {
+                    for (int j = 0; j < n; j++) {
+                        int a = swapNeighbourBits(A[j]), b = swapNeighbourBits(B[j]);
+                        int c = swapNeighbourBits(C[j]), d = swapNeighbourBits(D[j]);
+                        int y0, y1, y2, y3;
+                        int t3 = c | (a & b);
+                        int t4 = d & (a | b);
+                        y3 = t3 ^ t4;
+                        int t6 = ~d;
+                        int t7 = b ^ t4;
+                        int t9 = t7 | (y3 ^ t6);
+                        y1 = a ^ t9;
+                        y0 = (c ^ t7) ^ (d | y1);
+                        y2 = (t3 ^ y1) ^ (y0 ^ (a & y3));
+                        A[j] = y0 ^ ka;
+                        B[j] = y1 ^ kb;
+                        C[j] = y2 ^ kc;
+                        D[j] = y3 ^ kd;
+                    }
+                }
+                default -> throw new IllegalStateException("Unexpected S-box: " + (i & 7));
+            }
+        }
+    }
+
+    private void xorKey(int[] A, int[] B, int[] C, int[] D, int n, int round) {
+        int ka = roundKeys[4 * round];
+        int kb = roundKeys[4 * round + 1];
+        int kc = roundKeys[4 * round + 2];
+        int kd = roundKeys[4 * round + 3];
+        for (int j = 0; j < n; j++) {
+            A[j] ^= ka;
+            B[j] ^= kb;
+            C[j] ^= kc;
+            D[j] ^= kd;
+        }
+    }
+
+    // байты 0..3 блока - слово d, 12..15 - слово a, как в SerpentBitslice
+    private static void load(byte[] src, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            D[j] = readInt(src, offset);
+            C[j] = readInt(src, offset + 4);
+            B[j] = readInt(src, offset + 8);
+            A[j] = readInt(src, offset + 12);
+        }
+    }
+
+    private static void store(byte[] dst, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            writeInt(dst, offset, D[j]);
+            writeInt(dst, offset + 4, C[j]);
+            writeInt(dst, offset + 8, B[j]);
+            writeInt(dst, offset + 12, A[j]);
+        }
+    }
+
+    private static int swapNeighbourBits(int value) {
+        return ((value & 0x55555555) << 1) | ((value >>> 1) & 0x55555555);
+    }
+
+    private static void load(ByteBuffer src, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            D[j] = readInt(src, offset);
+            C[j] = readInt(src, offset + 4);
+            B[j] = readInt(src, offset + 8);
+            A[j] = readInt(src, offset + 12);
+        }
+    }
+
+    private static void store(ByteBuffer dst, int offset, int[] A, int[] B, int[] C, int[] D, int n) {
+        for (int j = 0; j < n; j++, offset += BLOCK_SIZE) {
+            writeInt(dst, offset, D[j]);
+            writeInt(dst, offset + 4, C[j]);
+            writeInt(dst, offset + 8, B[j]);
+            writeInt(dst, offset + 12, A[j]);
+        }
+    }
+
+    private static int readInt(ByteBuffer block, int offset) {
+        int value = block.getInt(offset);
+        return block.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static void writeInt(ByteBuffer block, int offset, int value) {
+        block.putInt(offset, block.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    private static int readInt(byte[] block, int offset) {
+        return (block[offset] & 0xff) << 24
+                | (block[offset + 1] & 0xff) << 16
+                | (block[offset + 2] & 0xff) << 8
+                | (block[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] block, int offset, int value) {
+        block[offset] = (byte) (value >>> 24);
+        block[offset + 1] = (byte) (value >>> 16);
+        block[offset + 2] = (byte) (value >>> 8);
+        block[offset + 3] = (byte) value;
+    }
+}
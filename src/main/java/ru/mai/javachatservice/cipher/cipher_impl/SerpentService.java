@@ -48,6 +48,11 @@ public class SerpentService {
             67, 71, 75, 79, 83, 87, 91, 95, 99, 103, 107, 111, 115, 119, 123, 127
     };
 
+    // замена целого байта за одно обращение, как в раундах Serpent:
+    // старший полубайт результата - S(младший полубайт входа), младший - S(старший)
+    public static final byte[][] BYTE_S_BOX_TABLE = buildByteTables(S_BOX_TABLE);
+    public static final byte[][] BYTE_S_BOX_INVERSE_TABLE = buildByteTables(S_BOX_INVERSE_TABLE);
+
     private final int lenKeyInBits;
 
     public SerpentService(int lenKeyInBits) {
@@ -126,6 +131,25 @@ public class SerpentService {
         return S_BOX_INVERSE_TABLE[i][b];
     }
 
+    public byte replaceByteFromSBox(byte b, int i) {
+        return BYTE_S_BOX_TABLE[i][b & 0xff];
+    }
+
+    public byte replaceByteFromInverseSBox(byte b, int i) {
+        return BYTE_S_BOX_INVERSE_TABLE[i][b & 0xff];
+    }
+
+    private static byte[][] buildByteTables(byte[][] nibbleTables) {
+        byte[][] result = new byte[nibbleTables.length][256];
+        for (int i = 0; i < nibbleTables.length; i++) {
+            for (int b = 0; b < 256; b++) {
+                result[i][b] = (byte) (nibbleTables[i][b & 0x0f] << 4 | nibbleTables[i][b >>> 4]);
+            }
+        }
+
+        return result;
+    }
+
     public void linearTransform(byte[] input) {
         int[] x = new int[4];
 
@@ -0,0 +1,229 @@
+package ru.mai.javachatservice.cipher.cipher_impl.mode;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+// Разбиение независимых блоков режима на куски по ядрам вместо одной задачи на блок.
+// Ниже порога всё считается в вызывающем потоке, выше - кусками по CHUNKS_PER_CORE на ядро,
+// которые в ForkJoinPool делятся пополам и балансируются воровством задач.
+// Порог - отношение стоимости запуска задач в том пуле, где идёт работа, к стоимости байта у алгоритма.
+// Первая замеряется один раз на пул. Вторая своя у каждого класса алгоритма (AES через JCA в десятки раз быстрее
+// RC6/Serpent) и уточняется по времени реальных кусков, поэтому учитывает и прогрев JIT.
+@Slf4j
+public class BlockParallelism {
+    // кусков на ядро: запас для балансировки, если какое-то ядро занято другим сообщением
+    private static final int CHUNKS_PER_CORE = 4;
+    // кусок кратен ширине полос RC6Lanes/SerpentLanes
+    private static final int CHUNK_ALIGNMENT_BLOCKS = 64;
+    private static final int MIN_THRESHOLD_BYTES = 4 * 1024;
+    private static final int MAX_THRESHOLD_BYTES = 256 * 1024;
+    // параллелить, только если работа хотя бы во столько раз дороже запуска задач
+    private static final int OVERHEAD_FACTOR = 4;
+    private static final String THRESHOLD_PROPERTY = "crypto.parallel.threshold";
+    private static final Integer CONFIGURED_THRESHOLD = Integer.getInteger(THRESHOLD_PROPERTY);
+    // наносекунд на запуск и ожидание пустой задачи по пулам; пулы общие и живут до конца процесса
+    private static final Map<ExecutorService, Double> DISPATCH_NANOS = new ConcurrentHashMap<>();
+    private static final double FALLBACK_DISPATCH_NANOS = 20_000;
+    private static final ClassValue<ByteCost> BYTE_COST = new ClassValue<>() {
+        @Override
+        protected ByteCost computeValue(Class<?> type) {
+            return new ByteCost();
+        }
+    };
+    // до первых замеров - как у прогретого RC6
+    private static final double INITIAL_NANOS_PER_BYTE = 5;
+    // меньшие куски не замеряются: время в них - в основном погрешность таймера
+    private static final int MIN_SAMPLE_BYTES = 1024;
+    // вес нового замера в скользящем среднем - 1/SAMPLE_WEIGHT
+    private static final int SAMPLE_WEIGHT = 8;
+
+    @FunctionalInterface
+    public interface BlockRangeTask {
+        // обработать блоки [firstBlock, firstBlock + count)
+        void process(int firstBlock, int count);
+    }
+
+    private BlockParallelism() {
+    }
+
+    // куски шифруются блочным алгоритмом cipher
+    public static void forEachChunk(ExecutorService executorService, CipherAlgorithms cipher, int countBlocks, int blockLength, BlockRangeTask task) {
+        forEachChunk(executorService, cipher.getClass(), countBlocks, blockLength, task);
+    }
+
+    // algorithm - класс, по которому учитывается стоимость байта
+    public static void forEachChunk(ExecutorService executorService, Class<?> algorithm, int countBlocks, int blockLength, BlockRangeTask task) {
+        if (countBlocks == 0) {
+            return;
+        }
+
+        int parallelism;
+        if (executorService instanceof CryptoExecutor cryptoExecutor) {
+            parallelism = cryptoExecutor.getParallelism();
+        } else if (executorService instanceof ForkJoinPool pool) {
+            parallelism = pool.getParallelism();
+        } else {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+
+        ByteCost cost = BYTE_COST.get(algorithm);
+        if (parallelism <= 1 || (long) countBlocks * blockLength < thresholdBytes(executorService, cost)) {
+            cost.timed(task, blockLength).process(0, countBlocks);
+            return;
+        }
+
+        int chunkBlocks = chunkBlocks(countBlocks, parallelism);
+        BlockRangeTask timedTask = cost.timed(task, blockLength);
+        if (executorService instanceof CryptoExecutor cryptoExecutor) {
+            cryptoExecutor.invoke(new Splitter(timedTask, 0, countBlocks, chunkBlocks));
+        } else if (executorService instanceof ForkJoinPool pool) {
+            pool.invoke(new Splitter(timedTask, 0, countBlocks, chunkBlocks));
+        } else {
+            submitChunks(executorService, timedTask, countBlocks, chunkBlocks);
+        }
+    }
+
+    // порог в байтах: запуск и ожидание задачи в пуле против шифрования того же объёма алгоритмом в текущем потоке
+    public static int getThresholdBytes(ExecutorService executorService, Class<?> algorithm) {
+        return thresholdBytes(executorService, BYTE_COST.get(algorithm));
+    }
+
+    private static int thresholdBytes(ExecutorService executorService, ByteCost cost) {
+        if (CONFIGURED_THRESHOLD != null) {
+            return CONFIGURED_THRESHOLD;
+        }
+
+        long threshold = (long) (OVERHEAD_FACTOR * dispatchNanos(executorService) / cost.nanosPerByte);
+        return (int) Math.max(MIN_THRESHOLD_BYTES, Math.min(MAX_THRESHOLD_BYTES, threshold));
+    }
+
+    private static int chunkBlocks(int countBlocks, int parallelism) {
+        int chunks = parallelism * CHUNKS_PER_CORE;
+        int chunkBlocks = (countBlocks + chunks - 1) / chunks;
+        return (chunkBlocks + CHUNK_ALIGNMENT_BLOCKS - 1) / CHUNK_ALIGNMENT_BLOCKS * CHUNK_ALIGNMENT_BLOCKS;
+    }
+
+    // для обычного пула: куски кроме последнего в пул, последний - в вызывающем потоке
+    private static void submitChunks(ExecutorService executorService, BlockRangeTask task, int countBlocks, int chunkBlocks) {
+        List<Future<?>> futures = new ArrayList<>(countBlocks / chunkBlocks + 1);
+        int firstBlock = 0;
+        for (; firstBlock + chunkBlocks < countBlocks; firstBlock += chunkBlocks) {
+            final int start = firstBlock;
+            futures.add(executorService.submit(() -> task.process(start, chunkBlocks)));
+        }
+        task.process(firstBlock, countBlocks - firstBlock);
+
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    private static class Splitter extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final BlockRangeTask task;
+        private final int firstBlock;
+        private final int count;
+        private final int chunkBlocks;
+
+        Splitter(BlockRangeTask task, int firstBlock, int count, int chunkBlocks) {
+            this.task = task;
+            this.firstBlock = firstBlock;
+            this.count = count;
+            this.chunkBlocks = chunkBlocks;
+        }
+
+        @Override
+        protected void compute() {
+            if (count <= chunkBlocks) {
+                task.process(firstBlock, count);
+                return;
+            }
+
+            // делим по границе куска, чтобы куски оставались выровненными
+            int half = (count / chunkBlocks + 1) / 2 * chunkBlocks;
+            invokeAll(new Splitter(task, firstBlock, half, chunkBlocks),
+                    new Splitter(task, firstBlock + half, count - half, chunkBlocks));
+        }
+    }
+
+    // замер не под computeIfAbsent: задачи пула сами шифруют и могут прийти сюда же, повторный замер безвреден
+    private static double dispatchNanos(ExecutorService executorService) {
+        Double cached = DISPATCH_NANOS.get(executorService);
+        if (cached != null) {
+            return cached;
+        }
+
+        double measured;
+        try {
+            measured = measureDispatchNanos(executorService);
+            log.info("Parallel dispatch cost of {}: {} ns", executorService, (long) measured);
+        } catch (RuntimeException ex) {
+            measured = FALLBACK_DISPATCH_NANOS;
+            log.warn("Failed to measure dispatch cost of {}", executorService, ex);
+        }
+
+        Double previous = DISPATCH_NANOS.putIfAbsent(executorService, measured);
+        return previous == null ? measured : previous;
+    }
+
+    // пустая задача тем же путём, что и куски в forEachChunk
+    private static double measureDispatchNanos(ExecutorService executorService) {
+        Runnable dispatch;
+        if (executorService instanceof CryptoExecutor cryptoExecutor) {
+            dispatch = () -> cryptoExecutor.invoke(new Splitter((firstBlock, count) -> { }, 0, 1, 1));
+        } else if (executorService instanceof ForkJoinPool pool) {
+            dispatch = () -> pool.invoke(new Splitter((firstBlock, count) -> { }, 0, 1, 1));
+        } else {
+            dispatch = () -> submitChunks(executorService, (firstBlock, count) -> { }, 2, 1);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            dispatch.run();
+        }
+
+        int rounds = 500;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            dispatch.run();
+        }
+        return (double) (System.nanoTime() - start) / rounds;
+    }
+
+    // стоимость байта у класса алгоритма; гонки обновлений безвредны - теряется одна выборка
+    private static final class ByteCost {
+        private volatile double nanosPerByte = INITIAL_NANOS_PER_BYTE;
+
+        private BlockRangeTask timed(BlockRangeTask task, int blockLength) {
+            return (firstBlock, count) -> {
+                long bytes = (long) count * blockLength;
+                if (bytes < MIN_SAMPLE_BYTES) {
+                    task.process(firstBlock, count);
+                    return;
+                }
+
+                long start = System.nanoTime();
+                task.process(firstBlock, count);
+                double sample = Math.max(1e-3, (double) (System.nanoTime() - start) / bytes);
+                nanosPerByte += (sample - nanosPerByte) / SAMPLE_WEIGHT;
+            };
+        }
+    }
+}
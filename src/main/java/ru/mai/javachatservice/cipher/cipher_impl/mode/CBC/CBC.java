@@ -1,97 +1,112 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.CBC;
 
+import ru.mai.javachatservice.cipher.cipher_impl.AES;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
 
 import java.util.concurrent.*;
-import java.util.ArrayList;
-import java.util.List;
 
-public class CBC implements EncryptionMode, AutoCloseable {
+public class CBC implements EncryptionMode {
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public CBC(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
+        return encrypt(text, IV);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text) {
+        return decrypt(text, IV);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        byte[] result = encrypt(text, state.getPreviousBlock());
+        saveLastBlock(result, state);
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        byte[] result = decrypt(text, state.getPreviousBlock());
+        saveLastBlock(text, state);
+        return result;
+    }
+
+    // следующий кусок потока сцепляется с последним блоком шифртекста
+    private void saveLastBlock(byte[] cipherText, ChainState state) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        if (cipherText.length >= blockLength) {
+            state.setPreviousBlock(cipherText, (cipherText.length / blockLength - 1) * blockLength);
+        }
+        state.advance(cipherText.length / blockLength);
+    }
+
+    private byte[] encrypt(byte[] text, byte[] IV) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
+        if (cipherAlgorithm instanceof AES aes && IV.length == blockLength) {
+            // вся цепочка - одним вызовом провайдера
+            aes.encryptCbc(text, result, text.length - text.length % blockLength, IV);
+            return result;
+        }
+
         byte[] previousBlock = IV;
+        int previousIndex = 0;
         int length = text.length / blockLength;
 
         for (int i = 0; i < length; ++i) {
             int startIndex = i * blockLength;
-            byte[] block = new byte[blockLength];
-            // byte[] block = threadLocalBuffer.get();
-            System.arraycopy(text, startIndex, block, 0, blockLength);
 
             // шифруем результат XOR текущего блока и результата шифрования предыдущего блока
-            byte[] encryptedBlock = cipherAlgorithm.encryptBlock(BinaryOperations.xor(block, previousBlock));
-            System.arraycopy(encryptedBlock, 0, result, startIndex, encryptedBlock.length);
-            previousBlock = encryptedBlock;
+            BinaryOperations.xor(text, startIndex, previousBlock, previousIndex, result, startIndex, blockLength);
+            cipherAlgorithm.encryptBlock(result, startIndex, result, startIndex);
+            previousBlock = result;
+            previousIndex = startIndex;
         }
 
         return result;
     }
 
-    @Override
-    public byte[] decrypt(byte[] text) {
+    private byte[] decrypt(byte[] text, byte[] IV) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
-        int countBlocks = text.length / blockLength;
-        List<Future<?>> futures = new ArrayList<>(countBlocks);
-
-        for (int i = 0; i < countBlocks; ++i) {
-            final int index = i;
-
-            futures.add(executorService.submit(() -> {
-                byte[] previousBlock = (index == 0) ? IV : new byte[blockLength]; // threadLocalBuffer.get()
-                if (index != 0) {
-                    System.arraycopy(text, (index - 1) * blockLength, previousBlock, 0, blockLength);
-                }
-
-                int startIndex = index * blockLength;
-                byte[] currentBlock = new byte[blockLength];
-                // byte[] currentBlock = threadLocalBuffer.get();
-                System.arraycopy(text, startIndex, currentBlock, 0, blockLength);
-
-                // XOR с предыдущим зашифрованным блоком
-                byte[] decryptedBlock = BinaryOperations.xor(previousBlock, cipherAlgorithm.decryptBlock(currentBlock));
-                System.arraycopy(decryptedBlock, 0, result, startIndex, decryptedBlock.length);
-            }));
+        if (cipherAlgorithm instanceof AES aes && IV.length == blockLength) {
+            aes.decryptCbc(text, result, text.length - text.length % blockLength, IV);
+            return result;
         }
 
-        for (var future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+        int countBlocks = text.length / blockLength;
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int startIndex = firstBlock * blockLength;
+            int endIndex = startIndex + count * blockLength;
+            cipherAlgorithm.decryptBlocks(text, startIndex, result, startIndex, count);
+
+            // XOR с предыдущим зашифрованным блоком: для первого блока это IV, дальше - шифртекст со сдвигом на блок
+            int xorIndex = startIndex;
+            if (firstBlock == 0) {
+                BinaryOperations.xorInPlace(result, 0, IV, 0, blockLength);
+                xorIndex = blockLength;
             }
-        }
+            BinaryOperations.xorInPlace(result, xorIndex, text, xorIndex - blockLength, endIndex - xorIndex);
+        });
 
         return result;
     }
-
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            // threadLocalBuffer.remove();
-        }
-    }
 }
\ No newline at end of file
@@ -2,100 +2,106 @@ package ru.mai.javachatservice.cipher.cipher_impl.mode.CFB;
 
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.*;
 
 
-public class CFB implements EncryptionMode, AutoCloseable {
+public class CFB implements EncryptionMode {
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public CFB(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
+        return encrypt(text, IV);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text) {
+        return decrypt(text, IV);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        byte[] result = encrypt(text, state.getPreviousBlock());
+        saveLastBlock(result, state);
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        byte[] result = decrypt(text, state.getPreviousBlock());
+        saveLastBlock(text, state);
+        return result;
+    }
+
+    // следующий кусок потока сцепляется с последним блоком шифртекста
+    private void saveLastBlock(byte[] cipherText, ChainState state) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        if (cipherText.length >= blockLength) {
+            state.setPreviousBlock(cipherText, (cipherText.length / blockLength - 1) * blockLength);
+        }
+        state.advance(cipherText.length / blockLength);
+    }
+
+    private byte[] encrypt(byte[] text, byte[] IV) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
         byte[] previousBlock = IV;
+        int previousIndex = 0;
         int length = text.length / blockLength;
 
         for (int i = 0; i < length; ++i) {
             int startIndex = i * blockLength;
-            byte[] block = new byte[blockLength];
-            // byte[] block = threadLocalBuffer.get();
-            System.arraycopy(text, startIndex, block, 0, blockLength);
 
             // XOR результата шифрования и открытого текста
-            byte[] encryptedBlock = BinaryOperations.xor(block, cipherAlgorithm.encryptBlock(previousBlock));
-            System.arraycopy(encryptedBlock, 0, result, startIndex, encryptedBlock.length);
-            previousBlock = encryptedBlock;
+            cipherAlgorithm.encryptBlock(previousBlock, previousIndex, result, startIndex);
+            BinaryOperations.xorInPlace(result, startIndex, text, startIndex, blockLength);
+            previousBlock = result;
+            previousIndex = startIndex;
         }
 
         return result;
     }
 
-    @Override
-    public byte[] decrypt(byte[] text) {
+    private byte[] decrypt(byte[] text, byte[] IV) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
         int countBlocks = text.length / blockLength;
-        List<Future<?>> futures = new ArrayList<>(countBlocks);
-
-        for (int i = 0; i < countBlocks; ++i) {
-            final int index = i;
-            futures.add(executorService.submit(() -> {
-                byte[] previousBlock = (index == 0) ? IV : new byte[blockLength]; // threadLocalBuffer.get()
-                if (index != 0) {
-                    System.arraycopy(text, (index - 1) * blockLength, previousBlock, 0, blockLength);
-                }
-
-                int startIndex = index * blockLength;
-                byte[] currentBlock = new byte[blockLength];
-                // byte[] currentBlock = threadLocalBuffer.get();
-                System.arraycopy(text, startIndex, currentBlock, 0, blockLength);
-
-                // XOR с предыдущим зашифрованным блоком
-                byte[] decryptedBlock = BinaryOperations.xor(currentBlock, cipherAlgorithm.decryptBlock(previousBlock));
-                System.arraycopy(decryptedBlock, 0, result, startIndex, decryptedBlock.length);
-            }));
-        }
-
-        for (var future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int startIndex = firstBlock * blockLength;
+            int endIndex = startIndex + count * blockLength;
+
+            // предыдущий зашифрованный блок: для первого блока это IV, дальше - шифртекст со сдвигом на блок
+            int processIndex = startIndex;
+            if (firstBlock == 0) {
+                cipherAlgorithm.decryptBlock(IV, 0, result, 0);
+                processIndex = blockLength;
             }
-        }
+            cipherAlgorithm.decryptBlocks(text, processIndex - blockLength, result, processIndex, (endIndex - processIndex) / blockLength);
 
-        return result;
-    }
+            // XOR с текущим блоком шифртекста
+            BinaryOperations.xorInPlace(result, startIndex, text, startIndex, endIndex - startIndex);
+        });
 
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            // threadLocalBuffer.remove();
-        }
+        return result;
     }
 }
 
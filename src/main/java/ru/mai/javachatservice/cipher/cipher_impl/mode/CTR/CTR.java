@@ -1,98 +1,199 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.CTR;
 
 import lombok.AllArgsConstructor;
-import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
+import ru.mai.javachatservice.cipher.cipher_impl.AES;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.KeystreamMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
-public class CTR implements EncryptionMode, AutoCloseable {
+public class CTR implements KeystreamMode {
+    // ключевой поток для буферов считается порциями по ширине полос RC6Lanes/SerpentLanes
+    private static final int KEYSTREAM_BLOCKS = 64;
+
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public CTR(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return true;
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
-        return multiprocessingText(text);
+        return multiprocessingText(text, 0);
     }
 
     @Override
     public byte[] decrypt(byte[] text) {
-        return multiprocessingText(text);
+        return multiprocessingText(text, 0);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, state);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, state);
     }
 
-    private byte[] multiprocessingText(byte[] text) {
+    private byte[] multiprocessingText(byte[] text, ChainState state) {
+        byte[] result = multiprocessingText(text, state.getBlockIndex());
+        state.advance(text.length / cipherAlgorithm.getBlockSize());
+        return result;
+    }
+
+    // counterOffset - номер первого блока текста в потоке
+    private byte[] multiprocessingText(byte[] text, long counterOffset) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
         int countBlocks = text.length / blockLength;
-        List<Future<?>> futures = new ArrayList<>(countBlocks);
-
-        for (int i = 0; i < countBlocks; ++i) {
-            final int index = i;
-
-            futures.add(executorService.submit(() -> {
-                int startIndex = index * blockLength;
-                byte[] block = new byte[blockLength];
-                // byte[] block = threadLocalBuffer.get();
-                System.arraycopy(text, startIndex, block, 0, blockLength);
-
-                byte[] blockForProcess = new byte[blockLength];
-                // byte[] blockForProcess = threadLocalBuffer.get();
-                int length = blockLength - Integer.BYTES;
-                System.arraycopy(IV, 0, blockForProcess, 0, length);
-
-                byte[] counterInBytes = new byte[Integer.BYTES];
-                for (int j = 0; j < counterInBytes.length; ++j) {
-                    counterInBytes[j] = (byte) (index >> (3 - j) * 8);
-                }
-                System.arraycopy(counterInBytes, 0, blockForProcess, length, counterInBytes.length);
-
-                byte[] encryptedBlock = BinaryOperations.xor(block, cipherAlgorithm.encryptBlock(blockForProcess));
-                System.arraycopy(encryptedBlock, 0, result, startIndex, encryptedBlock.length);
-            }));
+        if (cipherAlgorithm instanceof AES aes && (counterOffset & 0xFFFFFFFFL) + countBlocks <= 1L << 32) {
+            // счётчик не переполняет свои 32 бита: весь текст одним вызовом AES/CTR провайдера
+            byte[] counterBlock = new byte[blockLength];
+            writeCounterBlocks(counterBlock, 0, counterOffset, 1);
+            aes.applyCtr(text, result, countBlocks * blockLength, counterBlock);
+            return result;
         }
 
-        for (var future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int startIndex = firstBlock * blockLength;
+
+            // собираем блоки счётчика прямо на месте результата и шифруем их там же
+            writeCounterBlocks(result, startIndex, counterOffset + firstBlock, count);
+            cipherAlgorithm.encryptBlocks(result, startIndex, result, startIndex, count);
+            BinaryOperations.xorInPlace(result, startIndex, text, startIndex, count * blockLength);
+        });
+
+        return result;
+    }
+
+    @Override
+    public void encrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        multiprocessingBuffer(source, destination, state);
+    }
+
+    @Override
+    public void decrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        multiprocessingBuffer(source, destination, state);
+    }
+
+    // данные из буферов в кучу не копируются: в куче только порция ключевого потока,
+    // поэтому source и destination могут совпадать
+    private void multiprocessingBuffer(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        int countBlocks = source.remaining() / blockLength;
+        int length = countBlocks * blockLength;
+        if (destination.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+
+        int sourceStart = source.position();
+        int destinationStart = destination.position();
+        long counterOffset = state.getBlockIndex();
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            byte[] keystream = new byte[Math.min(count, KEYSTREAM_BLOCKS) * blockLength];
+            for (int done = 0; done < count; done += KEYSTREAM_BLOCKS) {
+                int blocks = Math.min(KEYSTREAM_BLOCKS, count - done);
+                int offset = (firstBlock + done) * blockLength;
+                writeCounterBlocks(keystream, 0, counterOffset + firstBlock + done, blocks);
+                cipherAlgorithm.encryptBlocks(keystream, 0, keystream, 0, blocks);
+                BinaryOperations.xor(source, sourceStart + offset, keystream, 0, destination, destinationStart + offset, blocks * blockLength);
             }
+        });
+
+        source.position(sourceStart + length);
+        destination.position(destinationStart + length);
+        state.advance(countBlocks);
+    }
+
+    @Override
+    public KeystreamMode withInitializationVector(byte[] initializationVector_IV) {
+        return new CTR(cipherAlgorithm, initializationVector_IV, executorService);
+    }
+
+    @Override
+    public void writeKeystream(byte[] target, int targetOffset, int count, ChainState state) {
+        writeCounterBlocks(target, targetOffset, state.getBlockIndex(), count);
+        cipherAlgorithm.encryptBlocks(target, targetOffset, target, targetOffset, count);
+        state.advance(count);
+    }
+
+    // блок счётчика зависит только от номера: пропуск ничего не стоит
+    @Override
+    public void skipKeystream(long count, ChainState state) {
+        state.advance(count);
+    }
+
+    // Расшифровать только байты [offset, offset + length) шифртекста: ключевой поток блока зависит лишь от IV
+    // и номера блока, поэтому остальной текст не нужен и время пропорционально длине диапазона
+    public byte[] decryptRange(byte[] cipherText, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > cipherText.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + ".." + (offset + length) + " is out of text of length " + cipherText.length);
         }
 
+        byte[] result = Arrays.copyOfRange(cipherText, offset, offset + length);
+        xorKeystream(result, 0, length, offset);
         return result;
     }
 
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
+    // data[dataOffset..dataOffset + length) стоят в потоке с позиции streamOffset: XOR на месте с ключевым потоком
+    // этих позиций, позиция может быть не выровнена на блок
+    public void xorKeystream(byte[] data, int dataOffset, int length, long streamOffset) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        long firstBlock = streamOffset / blockLength;
+        int skip = (int) (streamOffset % blockLength);
+        int countBlocks = (skip + length + blockLength - 1) / blockLength;
+        byte[] keystream = new byte[Math.min(countBlocks, KEYSTREAM_BLOCKS) * blockLength];
+
+        for (int done = 0; done < countBlocks; done += KEYSTREAM_BLOCKS) {
+            int blocks = Math.min(KEYSTREAM_BLOCKS, countBlocks - done);
+            writeCounterBlocks(keystream, 0, firstBlock + done, blocks);
+            cipherAlgorithm.encryptBlocks(keystream, 0, keystream, 0, blocks);
+
+            // первая порция начинается с середины блока, последняя может кончиться раньше ключевого потока
+            int keystreamStart = (done == 0) ? skip : 0;
+            int position = done * blockLength + keystreamStart - skip;
+            int part = Math.min(blocks * blockLength - keystreamStart, length - position);
+            BinaryOperations.xorInPlace(data, dataOffset + position, keystream, keystreamStart, part);
+        }
+    }
+
+    // блок счётчика: IV без последних 4 байт и номер блока в big-endian
+    private void writeCounterBlocks(byte[] target, int targetOffset, long firstCounter, int count) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        int length = blockLength - Integer.BYTES;
+        for (int i = 0; i < count; ++i) {
+            int blockIndex = targetOffset + i * blockLength;
+            long counter = firstCounter + i;
+            System.arraycopy(IV, 0, target, blockIndex, length);
+            for (int j = 0; j < Integer.BYTES; ++j) {
+                target[blockIndex + length + j] = (byte) (counter >> (3 - j) * 8);
             }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            // threadLocalBuffer.remove();
         }
     }
 }
-
 //@AllArgsConstructor
 //public class CTR implements EncryptionMode, AutoCloseable {
 //    private final CipherAlgorithms cipherAlgorithm;
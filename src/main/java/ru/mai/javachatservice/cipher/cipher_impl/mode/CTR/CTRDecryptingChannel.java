@@ -0,0 +1,115 @@
+package ru.mai.javachatservice.cipher.cipher_impl.mode.CTR;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+// Канал только для чтения поверх шифртекста CTR: position и size - в байтах открытого текста.
+// Чтение с любой позиции читает и расшифровывает только запрошенные байты, начало файла не трогается.
+public class CTRDecryptingChannel implements SeekableByteChannel {
+    // сколько шифртекста читается за один раз
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final CTR mode;
+    private final SeekableByteChannel cipherChannel;
+    // длина открытого текста: шифртекст без дополнения
+    private final long size;
+    private final byte[] buffer;
+    private long position;
+
+    public CTRDecryptingChannel(CTR mode, SeekableByteChannel cipherChannel, long size) {
+        this.mode = mode;
+        this.cipherChannel = cipherChannel;
+        this.size = size;
+        this.buffer = new byte[READ_BUFFER_SIZE];
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer destination) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+
+        int length = (int) Math.min(destination.remaining(), size - position);
+        int total = 0;
+        while (total < length) {
+            int part = Math.min(buffer.length, length - total);
+            int read = readCipherText(position, part);
+            if (read <= 0) {
+                throw new IOException("Encrypted channel is shorter than expected!");
+            }
+
+            mode.xorKeystream(buffer, 0, read, position);
+            destination.put(buffer, 0, read);
+            position += read;
+            total += read;
+        }
+
+        return total;
+    }
+
+    // читает шифртекст с позиции from, пока не наберётся length байт или канал не кончится
+    private int readCipherText(long from, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        cipherChannel.position(from);
+        while (target.hasRemaining()) {
+            if (cipherChannel.read(target) < 0) {
+                break;
+            }
+        }
+
+        return target.position();
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return cipherChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cipherChannel.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!cipherChannel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
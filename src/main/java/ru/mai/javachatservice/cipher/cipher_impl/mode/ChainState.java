@@ -0,0 +1,35 @@
+package ru.mai.javachatservice.cipher.cipher_impl.mode;
+
+// Состояние цепочки режима между кусками одного потока:
+// предыдущий блок (IV, шифртекст или регистр OFB - по режиму) и номер следующего блока для CTR/RandomDelta/ECB
+public class ChainState {
+    private final byte[] previousBlock;
+    private long blockIndex;
+
+    public ChainState(byte[] initializationVector_IV) {
+        this(initializationVector_IV, 0);
+    }
+
+    // начать с блока firstBlockIndex: имеет смысл только для режимов с произвольным доступом
+    public ChainState(byte[] initializationVector_IV, long firstBlockIndex) {
+        this.previousBlock = initializationVector_IV == null ? null : initializationVector_IV.clone();
+        this.blockIndex = firstBlockIndex;
+    }
+
+    // массив самого состояния: режим может менять его на месте
+    public byte[] getPreviousBlock() {
+        return previousBlock;
+    }
+
+    public void setPreviousBlock(byte[] source, int sourceOffset) {
+        System.arraycopy(source, sourceOffset, previousBlock, 0, previousBlock.length);
+    }
+
+    public long getBlockIndex() {
+        return blockIndex;
+    }
+
+    public void advance(long countBlocks) {
+        blockIndex += countBlocks;
+    }
+}
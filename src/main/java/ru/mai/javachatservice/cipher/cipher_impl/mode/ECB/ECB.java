@@ -1,80 +1,106 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.ECB;
 
 import lombok.AllArgsConstructor;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
-public class ECB implements EncryptionMode, AutoCloseable {
+public class ECB implements EncryptionMode {
     private final CipherAlgorithms cipherAlgorithm;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public ECB(CipherAlgorithms cipherAlgorithm, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return true;
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
-        return multiprocessingText(text, true);
+        return multiprocessingText(text, true, null);
     }
 
     @Override
     public byte[] decrypt(byte[] text) {
-        return multiprocessingText(text, false);
+        return multiprocessingText(text, false, null);
     }
 
-    private byte[] multiprocessingText(byte[] text, boolean encryptOrDecrypt) {
-        byte[] result = new byte[text.length];
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, true, state);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, false, state);
+    }
+
+    @Override
+    public void encrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        multiprocessingBuffer(source, destination, true, state);
+    }
+
+    @Override
+    public void decrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        multiprocessingBuffer(source, destination, false, state);
+    }
+
+    // шифр читает и пишет слова прямо в буферах, куски по абсолютным смещениям независимы
+    private void multiprocessingBuffer(ByteBuffer source, ByteBuffer destination, boolean encryptOrDecrypt, ChainState state) {
         int blockLength = cipherAlgorithm.getBlockSize();
-        int countBlocks = text.length / blockLength;
-        List<Future<?>> futures = new ArrayList<>(countBlocks);
-
-        for (int i = 0; i < countBlocks; ++i) {
-            final int index = i;
-
-            futures.add(executorService.submit(() -> {
-                int startIndex = index * blockLength;
-                byte[] block = new byte[blockLength];
-                // byte[] block = threadLocalBuffer.get(); // оптимизация с помощью буфера
-                System.arraycopy(text, startIndex, block, 0, blockLength);
-                block = encryptOrDecrypt ?
-                        cipherAlgorithm.encryptBlock(block) :
-                        cipherAlgorithm.decryptBlock(block);
-                System.arraycopy(block, 0, result, startIndex, block.length);
-            }));
+        int countBlocks = source.remaining() / blockLength;
+        int length = countBlocks * blockLength;
+        if (destination.remaining() < length) {
+            throw new BufferOverflowException();
         }
 
-        for (var future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+        int sourceStart = source.position();
+        int destinationStart = destination.position();
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int offset = firstBlock * blockLength;
+            if (encryptOrDecrypt) {
+                cipherAlgorithm.encryptBlocks(source, sourceStart + offset, destination, destinationStart + offset, count);
+            } else {
+                cipherAlgorithm.decryptBlocks(source, sourceStart + offset, destination, destinationStart + offset, count);
             }
-        }
+        });
 
-        return result;
+        source.position(sourceStart + length);
+        destination.position(destinationStart + length);
+        state.advance(countBlocks);
     }
 
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
+    private byte[] multiprocessingText(byte[] text, boolean encryptOrDecrypt, ChainState state) {
+        byte[] result = new byte[text.length];
+        int blockLength = cipherAlgorithm.getBlockSize();
+        int countBlocks = text.length / blockLength;
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int startIndex = firstBlock * blockLength;
+            if (encryptOrDecrypt) {
+                cipherAlgorithm.encryptBlocks(text, startIndex, result, startIndex, count);
+            } else {
+                cipherAlgorithm.decryptBlocks(text, startIndex, result, startIndex, count);
             }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            //threadLocalBuffer.remove();
+        });
+
+        if (state != null) {
+            state.advance(countBlocks);
         }
+
+        return result;
     }
 }
\ No newline at end of file
@@ -1,9 +1,49 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 
 public interface EncryptionMode {
+    int getBlockSize();
+
     byte[] encrypt(byte[] text);
 
     byte[] decrypt(byte[] text);
+
+    // очередной кусок потока (длина кратна блоку): цепочка продолжается из state и сохраняется в него
+    byte[] encrypt(byte[] text, ChainState state);
+
+    byte[] decrypt(byte[] text, ChainState state);
+
+    // Буферы вне кучи (direct, отображённые файлы): обрабатываются целые блоки source от position до limit,
+    // результат пишется в destination с его position, обе позиции сдвигаются на обработанную длину.
+    // По умолчанию - кусками через кучу; ECB и CTR работают прямо по буферам
+    default void encrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        processThroughHeap(source, destination, state, true);
+    }
+
+    default void decrypt(ByteBuffer source, ByteBuffer destination, ChainState state) {
+        processThroughHeap(source, destination, state, false);
+    }
+
+    private void processThroughHeap(ByteBuffer source, ByteBuffer destination, ChainState state, boolean encryptOrDecrypt) {
+        int length = source.remaining() - source.remaining() % getBlockSize();
+        // кусок 64 КБ кратен любому размеру блока из степеней двойки
+        byte[] part = new byte[Math.min(length, 1 << 16)];
+
+        while (length > 0) {
+            if (length < part.length) {
+                part = new byte[length];
+            }
+
+            source.get(part);
+            destination.put(encryptOrDecrypt ? encrypt(part, state) : decrypt(part, state));
+            length -= part.length;
+        }
+    }
+
+    // блок зависит только от своего номера, а не от соседних: любой участок текста можно обработать отдельно
+    default boolean supportsRandomAccess() {
+        return false;
+    }
 }
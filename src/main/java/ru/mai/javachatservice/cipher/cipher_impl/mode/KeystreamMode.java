@@ -0,0 +1,22 @@
+package ru.mai.javachatservice.cipher.cipher_impl.mode;
+
+// Режимы, у которых ключевой поток не зависит от текста (CTR, OFB): шифрование и расшифровка - XOR с ним,
+// поэтому поток можно выработать заранее
+public interface KeystreamMode extends EncryptionMode {
+    // записать в target ключевой поток count блоков, следующих за state, и сдвинуть state
+    void writeKeystream(byte[] target, int targetOffset, int count, ChainState state);
+
+    // тот же режим на том же алгоритме, но с другим IV (свой ключевой поток у каждой сессии KeystreamSession)
+    KeystreamMode withInitializationVector(byte[] initializationVector_IV);
+
+    // пропустить count блоков; по умолчанию они вырабатываются и выбрасываются
+    default void skipKeystream(long count, ChainState state) {
+        int portionBlocks = 64;
+        byte[] scratch = new byte[portionBlocks * getBlockSize()];
+        while (count > 0) {
+            int blocks = (int) Math.min(portionBlocks, count);
+            writeKeystream(scratch, 0, blocks, state);
+            count -= blocks;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ru.mai.javachatservice.cipher.cipher_impl.mode;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.utils.BinaryOperations;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+// Заранее выработанный ключевой поток CTR/OFB в кольцевом буфере.
+// Когда в кольце остаётся меньше lowWatermark блоков, в пуле запускается пополнение до highWatermark;
+// если кольцо пусто, недостающие блоки вырабатываются прямо в вызывающем потоке.
+// Каждый блок выдаётся один раз: номер следующего блока только растёт, выданная часть кольца затирается нулями.
+@Slf4j
+public class KeystreamReservoir implements AutoCloseable {
+    // за один захват блокировки пополнение вырабатывает не больше стольких блоков (ширина полос RC6Lanes/SerpentLanes),
+    // чтобы шифрование сообщения не ждало всё пополнение
+    private static final int REFILL_BLOCKS = 64;
+
+    private final KeystreamMode mode;
+    private final ExecutorService executorService;
+    private final int blockLength;
+    private final int capacityBlocks;
+    private final int lowWatermarkBlocks;
+    private final int highWatermarkBlocks;
+    private final byte[] ring;
+    // для блоков, которых не хватило в кольце
+    private final byte[] scratch;
+    // генератор всегда стоит на блоке nextBlock + availableBlocks
+    private final ChainState generator;
+    private long nextBlock;
+    private int availableBlocks;
+    private boolean refillScheduled;
+    private boolean closed;
+    private long reservoirBlocks;
+    private long inlineBlocks;
+
+    public KeystreamReservoir(KeystreamMode mode, byte[] initializationVector_IV, ExecutorService executorService,
+                              int capacityBlocks, int lowWatermarkBlocks, int highWatermarkBlocks) {
+        if (lowWatermarkBlocks < 0 || lowWatermarkBlocks >= highWatermarkBlocks || highWatermarkBlocks > capacityBlocks) {
+            throw new IllegalArgumentException("Illegal watermarks: " + lowWatermarkBlocks + ", " + highWatermarkBlocks + " for capacity " + capacityBlocks);
+        }
+
+        this.mode = mode;
+        this.executorService = executorService;
+        this.blockLength = mode.getBlockSize();
+        this.capacityBlocks = capacityBlocks;
+        this.lowWatermarkBlocks = lowWatermarkBlocks;
+        this.highWatermarkBlocks = highWatermarkBlocks;
+        this.ring = new byte[capacityBlocks * blockLength];
+        this.scratch = new byte[REFILL_BLOCKS * blockLength];
+        this.generator = new ChainState(initializationVector_IV);
+
+        synchronized (this) {
+            scheduleRefill();
+        }
+    }
+
+    // XOR countBlocks блоков data с ещё не выданным ключевым потоком; возвращает номер первого использованного блока
+    public synchronized long apply(byte[] data, int offset, int countBlocks) {
+        ensureOpen();
+        long firstBlock = nextBlock;
+
+        int fromRing = Math.min(availableBlocks, countBlocks);
+        takeFromRing(data, offset, fromRing);
+        reservoirBlocks += fromRing;
+
+        // кольцо опустело: остальное вырабатывается здесь же, генератор стоит ровно на nextBlock
+        for (int done = fromRing; done < countBlocks; done += REFILL_BLOCKS) {
+            int blocks = Math.min(REFILL_BLOCKS, countBlocks - done);
+            mode.writeKeystream(scratch, 0, blocks, generator);
+            BinaryOperations.xorInPlace(data, offset + done * blockLength, scratch, 0, blocks * blockLength);
+            nextBlock += blocks;
+            inlineBlocks += blocks;
+        }
+
+        if (availableBlocks < lowWatermarkBlocks) {
+            scheduleRefill();
+        }
+
+        return firstBlock;
+    }
+
+    // то же с известного номера блока (для расшифровки): блоки до него пропускаются, уже выданные недоступны
+    public synchronized void apply(byte[] data, int offset, int countBlocks, long blockIndex) {
+        ensureOpen();
+        if (blockIndex < nextBlock) {
+            throw new IllegalStateException("Keystream block " + blockIndex + " is already used, next is " + nextBlock);
+        }
+
+        long skip = blockIndex - nextBlock;
+        int fromRing = (int) Math.min(availableBlocks, skip);
+        takeFromRing(null, 0, fromRing);
+        if (skip > fromRing) {
+            mode.skipKeystream(skip - fromRing, generator);
+            nextBlock = blockIndex;
+        }
+
+        apply(data, offset, countBlocks);
+    }
+
+    // номер блока, который будет выдан следующим
+    public synchronized long getNextBlock() {
+        return nextBlock;
+    }
+
+    public synchronized int getAvailableBlocks() {
+        return availableBlocks;
+    }
+
+    // блоки, выданные из кольца, и выработанные в вызывающем потоке, когда кольцо было пусто
+    public synchronized long getReservoirBlocks() {
+        return reservoirBlocks;
+    }
+
+    public synchronized long getInlineBlocks() {
+        return inlineBlocks;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        availableBlocks = 0;
+        Arrays.fill(ring, (byte) 0);
+        Arrays.fill(scratch, (byte) 0);
+    }
+
+    // выдать count блоков из начала кольца (data == null - просто выбросить) и затереть их
+    private void takeFromRing(byte[] data, int offset, int count) {
+        while (count > 0) {
+            int head = (int) (nextBlock % capacityBlocks);
+            int blocks = Math.min(count, capacityBlocks - head);
+            int ringOffset = head * blockLength;
+            int length = blocks * blockLength;
+
+            if (data != null) {
+                BinaryOperations.xorInPlace(data, offset, ring, ringOffset, length);
+                offset += length;
+            }
+            Arrays.fill(ring, ringOffset, ringOffset + length, (byte) 0);
+
+            nextBlock += blocks;
+            availableBlocks -= blocks;
+            count -= blocks;
+        }
+    }
+
+    // вызывается под блокировкой
+    private void scheduleRefill() {
+        if (refillScheduled || closed) {
+            return;
+        }
+
+        refillScheduled = true;
+        try {
+            executorService.execute(this::refill);
+        } catch (RejectedExecutionException ex) {
+            // пул остановлен: блоки будут вырабатываться при выдаче
+            refillScheduled = false;
+        }
+    }
+
+    // порции по REFILL_BLOCKS под блокировкой, между порциями выдача не ждёт
+    private void refill() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed || availableBlocks >= highWatermarkBlocks) {
+                        refillScheduled = false;
+                        return;
+                    }
+
+                    int tail = (int) ((nextBlock + availableBlocks) % capacityBlocks);
+                    int blocks = Math.min(REFILL_BLOCKS, Math.min(highWatermarkBlocks - availableBlocks, capacityBlocks - tail));
+                    mode.writeKeystream(ring, tail * blockLength, blocks, generator);
+                    availableBlocks += blocks;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Keystream refill failed", ex);
+            synchronized (this) {
+                refillScheduled = false;
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Keystream reservoir is closed!");
+        }
+    }
+}
@@ -1,51 +1,77 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.OFB;
 
 import lombok.AllArgsConstructor;
-import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.KeystreamMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
-public class OFB implements EncryptionMode {
+public class OFB implements KeystreamMode {
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public OFB(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
-        return multiprocessingText(text);
+        return multiprocessingText(text, new ChainState(IV));
     }
 
     @Override
     public byte[] decrypt(byte[] text) {
-        return multiprocessingText(text);
+        return multiprocessingText(text, new ChainState(IV));
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, state);
     }
 
-    private byte[] multiprocessingText(byte[] text) {
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, state);
+    }
+
+    private byte[] multiprocessingText(byte[] text, ChainState state) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
-        byte[] previousBlock = IV;
+        // регистр обратной связи меняется прямо в состоянии
+        byte[] encryptedPart = state.getPreviousBlock();
         int length = text.length / blockLength;
 
         for (int i = 0; i < length; ++i) {
             int startIndex = i * blockLength;
-            byte[] block = new byte[blockLength];
-            // byte[] block = threadLocalBuffer.get();
-            System.arraycopy(text, startIndex, block, 0, blockLength);
-
-            byte[] encryptedPart = cipherAlgorithm.encryptBlock(previousBlock);
-            byte[] encryptedOrDecryptedBlock = BinaryOperations.xor(block, encryptedPart);
 
-            System.arraycopy(encryptedOrDecryptedBlock, 0, result, startIndex, encryptedOrDecryptedBlock.length);
-            previousBlock = encryptedPart;
+            cipherAlgorithm.encryptBlock(encryptedPart, 0, encryptedPart, 0);
+            BinaryOperations.xor(text, startIndex, encryptedPart, 0, result, startIndex, blockLength);
         }
 
         return result;
     }
+
+    @Override
+    public KeystreamMode withInitializationVector(byte[] initializationVector_IV) {
+        return new OFB(cipherAlgorithm, initializationVector_IV);
+    }
+
+    @Override
+    public void writeKeystream(byte[] target, int targetOffset, int count, ChainState state) {
+        int blockLength = cipherAlgorithm.getBlockSize();
+        byte[] register = state.getPreviousBlock();
+
+        for (int i = 0; i < count; ++i) {
+            cipherAlgorithm.encryptBlock(register, 0, register, 0);
+            System.arraycopy(register, 0, target, targetOffset + i * blockLength, blockLength);
+        }
+        state.advance(count);
+    }
 }
 //public class OFB implements EncryptionMode {
 //    private final CipherAlgorithms cipherAlgorithm;
@@ -1,70 +1,71 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.PCBC;
 
 import lombok.AllArgsConstructor;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
-public class PCBC implements EncryptionMode, AutoCloseable {
+public class PCBC implements EncryptionMode {
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
 
     public PCBC(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
-        return multiprocessingText(text, true);
+        return multiprocessingText(text, true, new ChainState(IV));
     }
 
     @Override
     public byte[] decrypt(byte[] text) {
-        return multiprocessingText(text, false);
+        return multiprocessingText(text, false, new ChainState(IV));
+    }
+
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, true, state);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        return multiprocessingText(text, false, state);
     }
 
-    private byte[] multiprocessingText(byte[] text, boolean encryptOrDecrypt) {
+    private byte[] multiprocessingText(byte[] text, boolean encryptOrDecrypt, ChainState state) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[text.length];
-        byte[] blockForXor = IV;
+        // XOR открытого и шифрованного блоков копится прямо в состоянии
+        byte[] blockForXor = state.getPreviousBlock();
         int length = text.length / blockLength;
 
         for (int i = 0; i < length; ++i) {
             int startIndex = i * blockLength;
-            byte[] block = new byte[blockLength];
-            // byte[] block = threadLocalBuffer.get();
-            System.arraycopy(text, startIndex, block, 0, blockLength);
 
-            byte[] encryptedOrDecryptedBlock = encryptOrDecrypt ?
-                    cipherAlgorithm.encryptBlock(BinaryOperations.xor(block, blockForXor)) :
-                    BinaryOperations.xor(blockForXor, cipherAlgorithm.decryptBlock(block));
-            System.arraycopy(encryptedOrDecryptedBlock, 0, result, startIndex, encryptedOrDecryptedBlock.length);
-            blockForXor = BinaryOperations.xor(encryptedOrDecryptedBlock, block);
+            if (encryptOrDecrypt) {
+                BinaryOperations.xor(text, startIndex, blockForXor, 0, result, startIndex, blockLength);
+                cipherAlgorithm.encryptBlock(result, startIndex, result, startIndex);
+            } else {
+                cipherAlgorithm.decryptBlock(text, startIndex, result, startIndex);
+                BinaryOperations.xorInPlace(result, startIndex, blockForXor, 0, blockLength);
+            }
+
+            BinaryOperations.xor(result, startIndex, text, startIndex, blockForXor, 0, blockLength);
         }
 
         return result;
     }
-
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            // threadLocalBuffer.remove();
-        }
-    }
 }
@@ -1,87 +1,191 @@
 package ru.mai.javachatservice.cipher.cipher_impl.mode.RandomDelta;
 
 import lombok.AllArgsConstructor;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.BlockParallelism;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
 import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
 import ru.mai.javachatservice.cipher.utils.BinaryOperations;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.nio.ByteOrder;
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.ExecutionException;
 
-public class RandomDelta implements EncryptionMode, AutoCloseable {
+public class RandomDelta implements EncryptionMode {
+    private static final int FIXED_WIDTH_BLOCK_SIZE = 16;
+    private static final VarHandle LONG_VIEW_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
     private final CipherAlgorithms cipherAlgorithm;
     private final byte[] IV;
     private final ExecutorService executorService;
-    private final ThreadLocal<byte[]> threadLocalBuffer;
     private final BigInteger delta;
+    // для 16-байтных блока и IV: IV и дельта в long, без BigInteger на каждый блок
+    private final boolean fixedWidth;
+    private final long startHigh;
+    private final long startLow;
+    private final long deltaLong;
 
     public RandomDelta(CipherAlgorithms cipherAlgorithm, byte[] initializationVector_IV, ExecutorService executorService) {
         this.cipherAlgorithm = cipherAlgorithm;
         this.IV = initializationVector_IV;
         this.executorService = executorService;
-        this.threadLocalBuffer = ThreadLocal.withInitial(() -> new byte[cipherAlgorithm.getBlockSize()]);
         delta = new BigInteger(Arrays.copyOf(IV, cipherAlgorithm.getBlockSize() / 2));
+
+        fixedWidth = cipherAlgorithm.getBlockSize() == FIXED_WIDTH_BLOCK_SIZE && IV.length == FIXED_WIDTH_BLOCK_SIZE;
+        startHigh = fixedWidth ? (long) LONG_VIEW_BIG_ENDIAN.get(IV, 0) : 0;
+        startLow = fixedWidth ? (long) LONG_VIEW_BIG_ENDIAN.get(IV, Long.BYTES) : 0;
+        deltaLong = startHigh;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return cipherAlgorithm.getBlockSize();
+    }
+
+    @Override
+    public boolean supportsRandomAccess() {
+        return true;
     }
 
     @Override
     public byte[] encrypt(byte[] text) {
-        return multiprocessingText(text, true);
+        return multiprocessingText(text, true, 0);
     }
 
     @Override
     public byte[] decrypt(byte[] text) {
-        return multiprocessingText(text, false);
+        return multiprocessingText(text, false, 0);
     }
 
-    private byte[] multiprocessingText(byte[] data, boolean encryptOrDecrypt) {
+    @Override
+    public byte[] encrypt(byte[] text, ChainState state) {
+        byte[] result = multiprocessingText(text, true, state.getBlockIndex());
+        state.advance(text.length / cipherAlgorithm.getBlockSize());
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] text, ChainState state) {
+        byte[] result = multiprocessingText(text, false, state.getBlockIndex());
+        state.advance(text.length / cipherAlgorithm.getBlockSize());
+        return result;
+    }
+
+    // indexOffset - номер первого блока текста в потоке
+    private byte[] multiprocessingText(byte[] data, boolean encryptOrDecrypt, long indexOffset) {
         int blockLength = cipherAlgorithm.getBlockSize();
         byte[] result = new byte[data.length];
         BigInteger initialStart = new BigInteger(IV);
         int countBlocks = data.length / blockLength;
-        List<Future<?>> futures = new ArrayList<>(countBlocks);
-
-        for (int i = 0; i < countBlocks; ++i) {
-            final int index = i;
-
-            futures.add(executorService.submit(() -> {
-                BigInteger initial = initialStart.add(delta.multiply(BigInteger.valueOf(index)));
-                int startIndex = index * blockLength;
-                byte[] block = new byte[blockLength];
-                // byte[] block = threadLocalBuffer.get();
-                System.arraycopy(data, startIndex, block, 0, blockLength);
-
-                byte[] encryptedOrDecryptedBlock = encryptOrDecrypt ?
-                        cipherAlgorithm.encryptBlock(BinaryOperations.xor(initial.toByteArray(), block)) :
-                        BinaryOperations.xor(cipherAlgorithm.decryptBlock(block), initial.toByteArray());
-                System.arraycopy(encryptedOrDecryptedBlock, 0, result, startIndex, encryptedOrDecryptedBlock.length);
-            }));
-        }
+        BlockParallelism.forEachChunk(executorService, cipherAlgorithm, countBlocks, blockLength, (firstBlock, count) -> {
+            int startIndex = firstBlock * blockLength;
 
-        for (var future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                throw new RuntimeException(ex);
+            if (encryptOrDecrypt) {
+                System.arraycopy(data, startIndex, result, startIndex, count * blockLength);
+                xorWithDelta(result, initialStart, indexOffset, firstBlock, count, blockLength);
+                cipherAlgorithm.encryptBlocks(result, startIndex, result, startIndex, count);
+            } else {
+                cipherAlgorithm.decryptBlocks(data, startIndex, result, startIndex, count);
+                xorWithDelta(result, initialStart, indexOffset, firstBlock, count, blockLength);
             }
-        }
+        });
 
         return result;
     }
 
-    @Override
-    public void close() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(2, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
+    private void xorWithDelta(byte[] result, BigInteger initialStart, long indexOffset, int firstBlock, int count, int blockLength) {
+        if (fixedWidth) {
+            xorWithDeltaFixedWidth(result, indexOffset, firstBlock, count);
+            return;
+        }
+
+        for (int index = firstBlock; index < firstBlock + count; ++index) {
+            byte[] initial = initialStart.add(delta.multiply(BigInteger.valueOf(indexOffset + index))).toByteArray();
+            // toByteArray может вернуть меньше байт, чем блок: XOR идёт с начала блока, остаток не меняется
+            int length = Math.min(initial.length, blockLength);
+            BinaryOperations.xorInPlace(result, index * blockLength, initial, 0, length);
+        }
+    }
+
+    // то же без BigInteger: IV + delta * index считается в 192 битах (top, high, low) в дополнительном коде,
+    // потому что сумма может не уместиться в 128 бит, и тогда toByteArray длиннее блока
+    private void xorWithDeltaFixedWidth(byte[] result, long indexOffset, int firstBlock, int count) {
+        long index = indexOffset + firstBlock;
+        long productHigh = Math.multiplyHigh(deltaLong, index);
+        Counter counter = new Counter(startHigh >> 63, startHigh, startLow);
+        counter.add(productHigh >> 63, productHigh, deltaLong * index);
+
+        long deltaSign = deltaLong >> 63;
+        for (int i = 0; i < count; ++i) {
+            counter.xorInto(result, (firstBlock + i) * FIXED_WIDTH_BLOCK_SIZE);
+            counter.add(deltaSign, deltaSign, deltaLong);
+        }
+    }
+
+    private static class Counter {
+        private long top;
+        private long high;
+        private long low;
+
+        Counter(long top, long high, long low) {
+            this.top = top;
+            this.high = high;
+            this.low = low;
+        }
+
+        void add(long otherTop, long otherHigh, long otherLow) {
+            long sumLow = low + otherLow;
+            long carryLow = Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0;
+            long sumHigh = high + otherHigh;
+            long carryHigh = Long.compareUnsigned(sumHigh, high) < 0 ? 1 : 0;
+            long sumHighWithCarry = sumHigh + carryLow;
+            if (Long.compareUnsigned(sumHighWithCarry, sumHigh) < 0) {
+                carryHigh = 1;
             }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        } finally {
-            // threadLocalBuffer.remove();
+
+            top += otherTop + carryHigh;
+            high = sumHighWithCarry;
+            low = sumLow;
+        }
+
+        // XOR блока с байтами toByteArray() значения так же, как в BigInteger-варианте: toByteArray занимает
+        // bitLength / 8 + 1 байт, с начала блока берутся первые min(длина, 16) из них
+        void xorInto(byte[] block, int offset) {
+            long sign = top >> 63;
+            long absTop = top ^ sign;
+            long absHigh = high ^ sign;
+            long absLow = low ^ sign;
+            int bitLength = absTop != 0 ? 192 - Long.numberOfLeadingZeros(absTop)
+                    : absHigh != 0 ? 128 - Long.numberOfLeadingZeros(absHigh)
+                    : 64 - Long.numberOfLeadingZeros(absLow);
+            int length = bitLength / Byte.SIZE + 1;
+
+            long outHigh;
+            long outLow;
+            if (length > FIXED_WIDTH_BLOCK_SIZE) {
+                // |IV + delta * index| < 2^128, поэтому длина не больше 17 байт: сдвиг вправо на один байт
+                int shift = (length - FIXED_WIDTH_BLOCK_SIZE) * Byte.SIZE;
+                outHigh = (top << (Long.SIZE - shift)) | (high >>> shift);
+                outLow = (high << (Long.SIZE - shift)) | (low >>> shift);
+            } else {
+                // младшие length байт значения к началу блока, остаток блока XOR с нулями не меняется
+                int shift = (FIXED_WIDTH_BLOCK_SIZE - length) * Byte.SIZE;
+                if (shift == 0) {
+                    outHigh = high;
+                    outLow = low;
+                } else if (shift < Long.SIZE) {
+                    outHigh = (high << shift) | (low >>> (Long.SIZE - shift));
+                    outLow = low << shift;
+                } else {
+                    outHigh = low << (shift - Long.SIZE);
+                    outLow = 0;
+                }
+            }
+
+            LONG_VIEW_BIG_ENDIAN.set(block, offset, (long) LONG_VIEW_BIG_ENDIAN.get(block, offset) ^ outHigh);
+            LONG_VIEW_BIG_ENDIAN.set(block, offset + Long.BYTES, (long) LONG_VIEW_BIG_ENDIAN.get(block, offset + Long.BYTES) ^ outLow);
         }
     }
 }
@@ -1,9 +1,65 @@
 package ru.mai.javachatservice.cipher.cipher_interface;
 
+import java.nio.ByteBuffer;
+
 public interface CipherAlgorithms {
     int getBlockSize();
 
     byte[] encryptBlock(byte[] text);
 
     byte[] decryptBlock(byte[] text);
-}
+
+    // шифрует блок из in[inOff..] в out[outOff..] без выделения памяти; in и out могут совпадать
+    default void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int blockSize = getBlockSize();
+        byte[] block = new byte[blockSize];
+        System.arraycopy(in, inOff, block, 0, blockSize);
+        System.arraycopy(encryptBlock(block), 0, out, outOff, blockSize);
+    }
+
+    default void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int blockSize = getBlockSize();
+        byte[] block = new byte[blockSize];
+        System.arraycopy(in, inOff, block, 0, blockSize);
+        System.arraycopy(decryptBlock(block), 0, out, outOff, blockSize);
+    }
+
+    // count независимых блоков подряд; src и dst либо совпадают, либо не пересекаются.
+    // Реализации переопределяют, чтобы шифровать несколько блоков одновременно
+    default void encryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        int blockSize = getBlockSize();
+        for (int i = 0; i < count; i++) {
+            encryptBlock(src, srcOff + i * blockSize, dst, dstOff + i * blockSize);
+        }
+    }
+
+    default void decryptBlocks(byte[] src, int srcOff, byte[] dst, int dstOff, int count) {
+        int blockSize = getBlockSize();
+        for (int i = 0; i < count; i++) {
+            decryptBlock(src, srcOff + i * blockSize, dst, dstOff + i * blockSize);
+        }
+    }
+
+    // То же для буферов вне кучи (direct, отображённых файлов): смещения абсолютные, position и limit не меняются,
+    // слова читаются в big-endian независимо от order() буфера. По умолчанию - через блок в куче,
+    // RC6 и Serpent переопределяют и читают слова прямо из буфера
+    default void encryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int blockSize = getBlockSize();
+        byte[] block = new byte[blockSize];
+        for (int i = 0; i < count; i++) {
+            src.get(srcOff + i * blockSize, block);
+            encryptBlock(block, 0, block, 0);
+            dst.put(dstOff + i * blockSize, block);
+        }
+    }
+
+    default void decryptBlocks(ByteBuffer src, int srcOff, ByteBuffer dst, int dstOff, int count) {
+        int blockSize = getBlockSize();
+        byte[] block = new byte[blockSize];
+        for (int i = 0; i < count; i++) {
+            src.get(srcOff + i * blockSize, block);
+            decryptBlock(block, 0, block, 0);
+            dst.put(dstOff + i * blockSize, block);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+package ru.mai.javachatservice.cipher.cipher_thread;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Один на процесс пул для всех режимов шифрования вместо пула на каждый SymmetricEncryption.
+// Внутри ForkJoinPool с ограниченным числом потоков: простаивающие потоки завершаются через KEEP_ALIVE_SECONDS,
+// так что открытые, но молчащие комнаты потоков не держат.
+// Закрывает пул только владелец (Spring-контекст через CryptoExecutorConfig), режимы и SymmetricEncryption его не трогают.
+@Slf4j
+public class CryptoExecutor extends AbstractExecutorService implements AutoCloseable {
+    private static final int KEEP_ALIVE_SECONDS = 60;
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 2;
+    private static final Object SHARED_LOCK = new Object();
+    private static volatile CryptoExecutor shared;
+
+    private final ForkJoinPool pool;
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public CryptoExecutor(int parallelism) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("crypto-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        // maximumPoolSize = parallelism: пул не растёт сверх заданного числа потоков даже при блокировках
+        this.pool = new ForkJoinPool(parallelism, factory, null, false,
+                0, parallelism, 1, forkJoinPool -> true, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // общий экземпляр для кода вне Spring-контекста; CryptoExecutorConfig отдаёт его же как бин.
+    // Берёт уже работающий пул с любым числом потоков, новый создаёт с числом по умолчанию
+    public static CryptoExecutor getShared() {
+        return getOrCreateShared(defaultParallelism());
+    }
+
+    // parallelism действует, только если общий пул ещё не создан: размер работающего ForkJoinPool не меняется
+    public static CryptoExecutor getShared(int parallelism) {
+        CryptoExecutor executor = getOrCreateShared(parallelism);
+        if (executor.getParallelism() != parallelism) {
+            log.warn("Crypto executor is already running with parallelism {}, requested parallelism {} is ignored",
+                    executor.getParallelism(), parallelism);
+        }
+        return executor;
+    }
+
+    private static CryptoExecutor getOrCreateShared(int parallelism) {
+        CryptoExecutor executor = shared;
+        if (executor == null || executor.isShutdown()) {
+            synchronized (SHARED_LOCK) {
+                executor = shared;
+                if (executor == null || executor.isShutdown()) {
+                    executor = new CryptoExecutor(parallelism);
+                    shared = executor;
+                    log.info("Crypto executor started with parallelism {}", parallelism);
+                }
+            }
+        }
+
+        return executor;
+    }
+
+    public static int defaultParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // выполнить fork-join задачу в пуле и дождаться её, время учитывается в задержке
+    public <T> T invoke(ForkJoinTask<T> task) {
+        long start = System.nanoTime();
+        try {
+            return pool.invoke(task);
+        } finally {
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long submitted = System.nanoTime();
+        pool.execute(() -> {
+            try {
+                command.run();
+            } finally {
+                recordLatency(System.nanoTime() - submitted);
+            }
+        });
+    }
+
+    // задачи в очередях: внешние отправки и разбитые, но ещё не украденные куски
+    public long getQueueDepth() {
+        return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+    }
+
+    public int getActiveWorkers() {
+        return pool.getActiveThreadCount();
+    }
+
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    // задержка от отправки до завершения задачи, включая ожидание в очереди
+    public long getAverageTaskLatencyMicros() {
+        long completed = completedTasks.sum();
+        return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.sum() / completed);
+    }
+
+    public long getMaxTaskLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return pool.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        log.info("Crypto executor stopping: completed {}, average latency {} us, max latency {} us",
+                getCompletedTasks(), getAverageTaskLatencyMicros(), getMaxTaskLatencyMicros());
+
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        completedTasks.increment();
+        totalLatencyNanos.add(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+}
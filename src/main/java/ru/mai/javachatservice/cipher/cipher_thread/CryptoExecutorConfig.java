@@ -0,0 +1,15 @@
+package ru.mai.javachatservice.cipher.cipher_thread;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CryptoExecutorConfig {
+
+    // 0 - по числу ядер минус одно
+    @Bean(destroyMethod = "close")
+    public CryptoExecutor cryptoExecutor(@Value("${crypto.executor.parallelism:0}") int parallelism) {
+        return CryptoExecutor.getShared(parallelism > 0 ? parallelism : CryptoExecutor.defaultParallelism());
+    }
+}
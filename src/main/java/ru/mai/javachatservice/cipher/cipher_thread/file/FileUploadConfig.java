@@ -1,6 +1,7 @@
 package ru.mai.javachatservice.cipher.cipher_thread.file;
 
 import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.boot.web.servlet.MultipartConfigFactory;
@@ -9,11 +10,14 @@ import org.springframework.util.unit.DataSize;
 @Configuration
 public class FileUploadConfig {
 
+    // вложения передаются частями (FileTransferSender), размер файла ограничен только этими свойствами.
+    // Свой бин отключает автоконфигурацию multipart Spring Boot, поэтому её свойства читаются здесь
     @Bean
-    public MultipartConfigElement multipartConfigElement() {
+    public MultipartConfigElement multipartConfigElement(@Value("${spring.servlet.multipart.max-file-size:1GB}") String maxFileSize,
+                                                         @Value("${spring.servlet.multipart.max-request-size:1GB}") String maxRequestSize) {
         MultipartConfigFactory factory = new MultipartConfigFactory();
-        factory.setMaxFileSize(DataSize.ofKilobytes(700));
-        factory.setMaxRequestSize(DataSize.ofKilobytes(700));
+        factory.setMaxFileSize(DataSize.parse(maxFileSize));
+        factory.setMaxRequestSize(DataSize.parse(maxRequestSize));
 
         return factory.createMultipartConfig();
     }
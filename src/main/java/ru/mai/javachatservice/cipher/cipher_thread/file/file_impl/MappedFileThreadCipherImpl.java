@@ -0,0 +1,107 @@
+package ru.mai.javachatservice.cipher.cipher_thread.file.file_impl;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.ChainState;
+import ru.mai.javachatservice.cipher.cipher_impl.mode.EncryptionMode;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
+import ru.mai.javachatservice.cipher.cipher_thread.file.file_interface.FileThreadCipher;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+// Шифрование файла через отображение в память вместо чтения частей в кучу.
+// Файл режется на окна по WINDOW_BYTES; для режимов с произвольным доступом (ECB, CTR, RandomDelta)
+// окна обрабатываются параллельно в общем CryptoExecutor, для остальных - по порядку с одной цепочкой на весь файл.
+// Окно отдаётся режиму прямо отображениями источника и результата (EncryptionMode с ByteBuffer): ECB и CTR
+// работают по ним без копий в кучу, остальные режимы проходят окно кусками по 64 КБ.
+// Файл на входе уже дополнен до целого числа блоков.
+@Slf4j
+public class MappedFileThreadCipherImpl implements FileThreadCipher {
+    // окно отображения: меньше 2 ГБ (предел MappedByteBuffer) и кратно любому размеру блока
+    private static final long WINDOW_BYTES = 64L << 20;
+
+    private final EncryptionMode encryptionMode;
+    private final byte[] initializationVector_IV;
+    private final int sizeBlockBytes;
+    private final CryptoExecutor cryptoExecutor;
+
+    public MappedFileThreadCipherImpl(EncryptionMode encryptionMode, byte[] initializationVector_IV, int sizeBlockBytes, CryptoExecutor cryptoExecutor) {
+        this.encryptionMode = encryptionMode;
+        this.initializationVector_IV = initializationVector_IV;
+        this.sizeBlockBytes = sizeBlockBytes;
+        this.cryptoExecutor = cryptoExecutor;
+    }
+
+    @Override
+    public String cipher(String pathToInputFile, String pathToOutputFile, boolean encryptOrDecrypt) throws IOException {
+        try (RandomAccessFile inputFile = new RandomAccessFile(pathToInputFile, "r");
+             RandomAccessFile outputFile = new RandomAccessFile(pathToOutputFile, "rw")) {
+            long length = inputFile.length();
+            if (length % sizeBlockBytes != 0) {
+                throw new IOException("File length is not a multiple of block size!");
+            }
+
+            outputFile.setLength(length);
+            FileChannel input = inputFile.getChannel();
+            FileChannel output = outputFile.getChannel();
+            long windowBytes = WINDOW_BYTES - WINDOW_BYTES % sizeBlockBytes;
+
+            if (encryptionMode.supportsRandomAccess()) {
+                List<RecursiveAction> windows = new ArrayList<>();
+                for (long position = 0; position < length; position += windowBytes) {
+                    long start = position;
+                    long size = Math.min(windowBytes, length - position);
+                    windows.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            try {
+                                processWindow(input, output, start, size, new ChainState(initializationVector_IV, start / sizeBlockBytes), encryptOrDecrypt);
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+                    });
+                }
+
+                try {
+                    cryptoExecutor.invoke(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            invokeAll(windows);
+                        }
+                    });
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            } else {
+                ChainState state = new ChainState(initializationVector_IV);
+                for (long position = 0; position < length; position += windowBytes) {
+                    processWindow(input, output, position, Math.min(windowBytes, length - position), state, encryptOrDecrypt);
+                }
+            }
+
+            log.info("File {} processed into {} ({} bytes)", pathToInputFile, pathToOutputFile, length);
+        }
+
+        return pathToOutputFile;
+    }
+
+    private void processWindow(FileChannel input, FileChannel output, long position, long size, ChainState state, boolean encryptOrDecrypt) throws IOException {
+        MappedByteBuffer source = input.map(FileChannel.MapMode.READ_ONLY, position, size);
+        MappedByteBuffer destination = output.map(FileChannel.MapMode.READ_WRITE, position, size);
+
+        if (encryptOrDecrypt) {
+            encryptionMode.encrypt(source, destination, state);
+        } else {
+            encryptionMode.decrypt(source, destination, state);
+        }
+
+        destination.force();
+    }
+}
@@ -2,6 +2,8 @@ package ru.mai.javachatservice.cipher.utils;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
@@ -9,14 +11,16 @@ import java.util.Arrays;
 
 @Slf4j
 public class BinaryOperations {
+    // long-представление массива байт: XOR не зависит от порядка байт, поэтому берём родной
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // для XOR с ByteBuffer: буфер читается в big-endian независимо от его order(), массив - так же
+    private static final VarHandle LONG_VIEW_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
 
     public static byte[] xor(byte[] first, byte[] second) {
         if (first.length == second.length) {
             // Если длины массивов одинаковы, просто выполняем XOR по всей длине
             byte[] result = new byte[first.length];
-            for (int i = 0; i < first.length; i++) {
-                result[i] = (byte) (first[i] ^ second[i]);
-            }
+            xor(first, 0, second, 0, result, 0, first.length);
             return result;
         } else {
             // Если длины массивов различны, используем более сложную обработку
@@ -25,9 +29,7 @@ public class BinaryOperations {
             byte[] result = new byte[maxLength];
 
             // XOR для общих байтов
-            for (int i = 0; i < minLength; i++) {
-                result[i] = (byte) (first[i] ^ second[i]);
-            }
+            xor(first, 0, second, 0, result, 0, minLength);
 
             // Копируем оставшиеся байты из более длинного массива
             if (first.length > second.length) {
@@ -40,6 +42,45 @@ public class BinaryOperations {
         }
     }
 
+    // XOR length байт first[firstOffset..] и second[secondOffset..] в result[resultOffset..] по 8 байт за раз;
+    // result либо совпадает с first или second на том же смещении, либо с ними не пересекается
+    public static void xor(byte[] first, int firstOffset, byte[] second, int secondOffset, byte[] result, int resultOffset, int length) {
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            long value = (long) LONG_VIEW.get(first, firstOffset + i) ^ (long) LONG_VIEW.get(second, secondOffset + i);
+            LONG_VIEW.set(result, resultOffset + i, value);
+        }
+        for (; i < length; i++) {
+            result[resultOffset + i] = (byte) (first[firstOffset + i] ^ second[secondOffset + i]);
+        }
+    }
+
+    // target[targetOffset..] ^= source[sourceOffset..]
+    public static void xorInPlace(byte[] target, int targetOffset, byte[] source, int sourceOffset, int length) {
+        xor(target, targetOffset, source, sourceOffset, target, targetOffset, length);
+    }
+
+    // то же для буферов (в том числе direct) по абсолютным индексам, position и limit не меняются
+    public static void xor(ByteBuffer first, int firstOffset, byte[] second, int secondOffset, ByteBuffer result, int resultOffset, int length) {
+        int i = 0;
+        for (; i <= length - Long.BYTES; i += Long.BYTES) {
+            long value = getLongBigEndian(first, firstOffset + i) ^ (long) LONG_VIEW_BIG_ENDIAN.get(second, secondOffset + i);
+            putLongBigEndian(result, resultOffset + i, value);
+        }
+        for (; i < length; i++) {
+            result.put(resultOffset + i, (byte) (first.get(firstOffset + i) ^ second[secondOffset + i]));
+        }
+    }
+
+    private static long getLongBigEndian(ByteBuffer buffer, int index) {
+        long value = buffer.getLong(index);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static void putLongBigEndian(ByteBuffer buffer, int index, long value) {
+        buffer.putLong(index, buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
     public static byte[] leftCycleShift(byte[] input, long shift) {
         byte[] result;
         long value = bytesToLong(input);
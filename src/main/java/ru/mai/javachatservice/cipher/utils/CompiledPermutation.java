@@ -0,0 +1,85 @@
+package ru.mai.javachatservice.cipher.utils;
+
+import java.util.Arrays;
+
+// Перестановка, заранее разложенная по входным байтам: для каждого байта входа и каждого его значения
+// хранится готовый вклад в результат, так что применение - это несколько OR на входной байт.
+public class CompiledPermutation {
+    private final byte[] pBlock;
+    private final Permutations.RuleIndex rule;
+    private final int inputLength;
+    private final int resultSize;
+    private final int words;
+
+    // tables[b][v * words + w] - слово w результата (big-endian) от байта b входа со значением v
+    private final long[][] tables;
+
+    public CompiledPermutation(byte[] pBlock, Permutations.RuleIndex rule, int inputLength) {
+        this.pBlock = Arrays.copyOf(pBlock, pBlock.length);
+        this.rule = rule;
+        this.inputLength = inputLength;
+        this.resultSize = pBlock.length / 8 + (pBlock.length % 8 == 0 ? 0 : 1);
+        this.words = (resultSize + 7) / 8;
+        this.tables = new long[inputLength][256 * words];
+
+        // некорректный P-блок должен падать так же, как побитовая перестановка, даже если входных байт нет
+        Permutations.permutateBitwise(new byte[inputLength], pBlock, rule);
+
+        for (int b = 0; b < inputLength; b++) {
+            // вклад каждого бита снимаем обычной побитовой перестановкой,
+            // поэтому правила индексации и проверка границ остаются те же
+            long[][] bits = new long[8][];
+            for (int k = 0; k < 8; k++) {
+                byte[] probe = new byte[inputLength];
+                probe[b] = (byte) (1 << k);
+                bits[k] = toWords(Permutations.permutateBitwise(probe, pBlock, rule));
+            }
+
+            long[] table = tables[b];
+            for (int v = 1; v < 256; v++) {
+                for (int k = 0; k < 8; k++) {
+                    if ((v >> k & 1) == 1) {
+                        for (int w = 0; w < words; w++) {
+                            table[v * words + w] |= bits[k][w];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean matches(byte[] pBlock, Permutations.RuleIndex rule, int inputLength) {
+        return this.rule == rule && this.inputLength == inputLength && Arrays.equals(this.pBlock, pBlock);
+    }
+
+    public byte[] apply(byte[] array) {
+        if (array.length != inputLength) {
+            throw new IllegalArgumentException("Permutation compiled for " + inputLength + " bytes, got " + array.length);
+        }
+
+        long[] accumulator = new long[words];
+        for (int b = 0; b < inputLength; b++) {
+            long[] table = tables[b];
+            int offset = (array[b] & 0xff) * words;
+            for (int w = 0; w < words; w++) {
+                accumulator[w] |= table[offset + w];
+            }
+        }
+
+        byte[] result = new byte[resultSize];
+        for (int i = 0; i < resultSize; i++) {
+            result[i] = (byte) (accumulator[i / 8] >>> (56 - 8 * (i % 8)));
+        }
+
+        return result;
+    }
+
+    private long[] toWords(byte[] bytes) {
+        long[] result = new long[words];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i / 8] |= (bytes[i] & 0xffL) << (56 - 8 * (i % 8));
+        }
+
+        return result;
+    }
+}
@@ -2,6 +2,8 @@ package ru.mai.javachatservice.cipher.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class Permutations {
@@ -12,7 +14,27 @@ public class Permutations {
         RightOne
     }
 
+    // скомпилированные перестановки по ссылке на P-блок: в шифрах это статические таблицы,
+    // поэтому кэш маленький, а одноразовые P-блоки сверх лимита идут по побитовому пути
+    private static final int CACHE_LIMIT = 64;
+    private static final Map<byte[], CompiledPermutation> CACHE = new ConcurrentHashMap<>();
+
     public static byte[] permutate(byte[] array, byte[] Pblock, RuleIndex rule) {
+        CompiledPermutation compiled = CACHE.get(Pblock);
+        if (compiled == null || !compiled.matches(Pblock, rule, array.length)) {
+            if (compiled == null && CACHE.size() >= CACHE_LIMIT) {
+                return permutateBitwise(array, Pblock, rule);
+            }
+
+            // P-блок изменили или вызвали с другим правилом/длиной - компилируем заново
+            compiled = new CompiledPermutation(Pblock, rule, array.length);
+            CACHE.put(Pblock, compiled);
+        }
+
+        return compiled.apply(array);
+    }
+
+    static byte[] permutateBitwise(byte[] array, byte[] Pblock, RuleIndex rule) {
         int resultSize = Pblock.length / 8 + (Pblock.length % 8 == 0 ? 0 : 1);
         byte[] result = new byte[resultSize]; // (Pblock.length + 7) / 8;
 
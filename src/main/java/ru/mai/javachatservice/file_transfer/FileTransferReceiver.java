@@ -0,0 +1,217 @@
+package ru.mai.javachatservice.file_transfer;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Сборка вложения из частей прямо в файл <transferId>.part в каталоге сессии: в памяти только текущая часть.
+// Части приходят по порядку (порядок внутри комнаты сохраняется), поэтому принятое - это начало файла,
+// и по длине .part после перезапуска видно, с какой части продолжать. Повторы уже принятых частей
+// пропускаются, части после пропуска отбрасываются до повторной отправки с первой непринятой: о пропуске
+// отправитель узнаёт из RESEND_TYPE, один раз на каждый свой запуск.
+// Собранные файлы отдаются окну комнаты с диска и удаляются в close, когда окно закрыто.
+// .part переживают close для продолжения приёма, а файлы в каталогах всех сессий, которые не менялись
+// дольше STALE_TTL (брошенные передачи, файлы упавшего процесса), удаляются при создании приёмника.
+// Вызывается из обработчика записей комнаты, по одной записи за раз. close может прийти из другого потока
+// (закрытие окна): он ждёт запись, которая сейчас пишется, а после него записи не принимаются.
+@Slf4j
+public class FileTransferReceiver implements AutoCloseable {
+    // подтверждение после стольких частей и после последней
+    private static final int ACK_EVERY = 8;
+    private static final String PART_SUFFIX = ".part";
+    static final String ACK_TYPE = "chunk_ack";
+    static final String RESEND_TYPE = "chunk_resend";
+    private static final Duration STALE_TTL = Duration.ofHours(24);
+
+    private final Path directory;
+    private final Map<String, Incoming> incoming = new HashMap<>();
+    // собранные за сессию передачи: поздние повторы их частей не открывают новый .part
+    private final Set<String> completed = new HashSet<>();
+    private final List<Path> completedFiles = new ArrayList<>();
+    private boolean closed;
+
+    public record Result(FileChunkMessage ack, Path completedFile) {
+    }
+
+    // root - общий каталог передач, в нём у каждой сессии свой каталог
+    public FileTransferReceiver(Path root, String session) throws IOException {
+        deleteStale(root);
+        this.directory = Files.createDirectories(root.resolve(safeName(session)));
+    }
+
+    // ack - подтверждение, которое нужно отправить (или null), completedFile - собранный файл (или null)
+    public synchronized Result accept(FileChunkMessage chunk) throws IOException {
+        if (closed || completed.contains(chunk.getTransferId())) {
+            return new Result(null, null);
+        }
+
+        Incoming transfer = incoming.get(chunk.getTransferId());
+        if (transfer == null) {
+            transfer = open(chunk);
+            incoming.put(chunk.getTransferId(), transfer);
+
+            // все части уже были на диске, не успели только переименовать файл
+            if (transfer.next >= chunk.getTotalChunks()) {
+                return complete(chunk, transfer);
+            }
+        }
+
+        // номер не больше прежнего - отправитель начал новый запуск, о пропуске в нём нужно сообщить снова
+        if (chunk.getSequence() <= transfer.lastSequence) {
+            transfer.resendRequested = -1;
+        }
+        transfer.lastSequence = chunk.getSequence();
+
+        if (chunk.getSequence() != transfer.next) {
+            log.debug("Skip chunk {} of {}, expected {}", chunk.getSequence(), chunk.getTransferId(), transfer.next);
+            if (chunk.getSequence() < transfer.next || transfer.resendRequested == transfer.next) {
+                return new Result(null, null);
+            }
+
+            // после пропуска отправитель узнаёт, с какой части продолжать
+            transfer.resendRequested = transfer.next;
+            return new Result(ack(chunk, RESEND_TYPE, transfer.next), null);
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(chunk.getBytes());
+        long position = (long) chunk.getSequence() * FileTransferSender.CHUNK_SIZE;
+        while (data.hasRemaining()) {
+            position += transfer.channel.write(data, position);
+        }
+        transfer.next++;
+
+        if (transfer.next < chunk.getTotalChunks()) {
+            return new Result(transfer.next % ACK_EVERY == 0 ? ack(chunk, ACK_TYPE, transfer.next) : null, null);
+        }
+
+        return complete(chunk, transfer);
+    }
+
+    public synchronized int getIncomingTransfers() {
+        return incoming.size();
+    }
+
+    // .part остаются на диске, чтобы продолжить приём после переподключения, собранные файлы больше не нужны
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Incoming transfer : incoming.values()) {
+            try {
+                transfer.channel.close();
+            } catch (IOException ex) {
+                log.error("Error while closing {}: {}", transfer.part, ex.getMessage());
+            }
+        }
+        incoming.clear();
+
+        for (Path file : completedFiles) {
+            delete(file);
+        }
+        completedFiles.clear();
+    }
+
+    private Incoming open(FileChunkMessage chunk) throws IOException {
+        Path part = directory.resolve(safeName(chunk.getTransferId()) + PART_SUFFIX);
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // недописанная часть (обрыв во время записи) отрезается
+        int next = (int) Math.min(channel.size() / FileTransferSender.CHUNK_SIZE, chunk.getTotalChunks());
+        channel.truncate((long) next * FileTransferSender.CHUNK_SIZE);
+        if (next > 0) {
+            log.info("Resume transfer {} of {} from chunk {}", chunk.getTransferId(), chunk.getFileName(), next);
+        }
+
+        return new Incoming(part, channel, next);
+    }
+
+    private Result complete(FileChunkMessage chunk, Incoming transfer) throws IOException {
+        transfer.channel.close();
+        incoming.remove(chunk.getTransferId());
+        completed.add(chunk.getTransferId());
+
+        Path file = directory.resolve(safeName(chunk.getTransferId()) + "_" + safeName(chunk.getFileName()));
+        Files.move(transfer.part, file, StandardCopyOption.REPLACE_EXISTING);
+        completedFiles.add(file);
+        return new Result(ack(chunk, ACK_TYPE, chunk.getTotalChunks()), file);
+    }
+
+    private static FileChunkMessage ack(FileChunkMessage chunk, String typeMessage, int next) {
+        return FileChunkMessage.builder()
+                .typeMessage(typeMessage)
+                .transferId(chunk.getTransferId())
+                .sequence(next)
+                .totalChunks(chunk.getTotalChunks())
+                .fileSize(chunk.getFileSize())
+                .build();
+    }
+
+    // файлы каталогов сессий старше STALE_TTL и опустевшие после этого каталоги
+    private static void deleteStale(Path root) {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        FileTime staleBefore = FileTime.from(Instant.now().minus(STALE_TTL));
+        try (Stream<Path> sessions = Files.list(root)) {
+            for (Path session : sessions.filter(Files::isDirectory).toList()) {
+                try (Stream<Path> files = Files.list(session)) {
+                    for (Path file : files.toList()) {
+                        if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).compareTo(staleBefore) < 0) {
+                            log.info("Delete stale transfer file {}", file);
+                            delete(file);
+                        }
+                    }
+                }
+
+                try (Stream<Path> files = Files.list(session)) {
+                    if (files.findAny().isEmpty()) {
+                        delete(session);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Error while deleting stale transfers in {}: {}", root, ex.getMessage());
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.error("Error while deleting {}: {}", path, ex.getMessage());
+        }
+    }
+
+    // имя от собеседника не должно выводить за каталог сессии
+    private static String safeName(String name) {
+        return name == null ? "file" : name.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+    }
+
+    private static class Incoming {
+        private final Path part;
+        private final FileChannel channel;
+        // первая ещё не принятая часть
+        private int next;
+        // последний пришедший номер и часть, которую уже попросили отправить заново (-1 - нет)
+        private int lastSequence = -1;
+        private int resendRequested = -1;
+
+        private Incoming(Path part, FileChannel channel, int next) {
+            this.part = part;
+            this.channel = channel;
+            this.next = next;
+        }
+    }
+}
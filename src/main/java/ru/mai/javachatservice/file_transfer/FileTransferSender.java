@@ -0,0 +1,272 @@
+package ru.mai.javachatservice.file_transfer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import ru.mai.javachatservice.cipher.MessageCipher;
+import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordType;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Отправка вложения частями по CHUNK_SIZE: каждая часть - отдельная зашифрованная запись FILE_CHUNK
+// с номером передачи, номером части и их числом. Части читаются с диска и шифруются в общем пуле шифрования,
+// одновременно в работе не больше PARALLEL_CHUNKS частей. Писателю они передаются строго по порядку номеров
+// из отдельного потока отправки: send может ждать лимита писателя и продюсера, потоки шифрования на это не заняты;
+// следующая часть берётся в работу, когда брокер подтвердил запись одной из прежних.
+// Получатель подтверждает приём (CHUNK_ACK). Передача помнит последнее подтверждение: после ошибки отправки,
+// просьбы получателя отправить заново (пропущенная часть) или обрыва и нового обмена ключами
+// она продолжается с первой неподтверждённой части.
+@Slf4j
+public class FileTransferSender implements AutoCloseable {
+    // запись с частью меньше max.request.size продюсера (1 МБ) с запасом на заголовки и дополнение
+    public static final int CHUNK_SIZE = 256 * 1024;
+    private static final int PARALLEL_CHUNKS = 4;
+    // подряд неудачных запусков без продвижения, после них передача ждёт resume
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int SEND_KEEP_ALIVE_SECONDS = 60;
+
+    private final KafkaWriter kafkaWriter;
+    private final ExecutorService executorService;
+    // один поток на отправителя, без передач завершается через SEND_KEEP_ALIVE_SECONDS, поэтому close его не
+    // останавливает: поздние части остановленного запуска не получат отказа пула
+    private final ExecutorService sendExecutor;
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+    // executorService - общий пул шифрования (CryptoExecutor), закрывает его владелец
+    public FileTransferSender(KafkaWriter kafkaWriter, ExecutorService executorService) {
+        this.kafkaWriter = kafkaWriter;
+        this.executorService = executorService;
+        this.sendExecutor = new ThreadPoolExecutor(0, 1, SEND_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "file-transfer-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // файл нужен до полного подтверждения: возвращённая передача завершается, когда получатель подтвердил все части,
+    // и отменяется в close
+    public CompletableFuture<Void> send(Path file, String fileName, String typeFormat, MessageCipher cipher, String outputTopic) throws IOException {
+        long fileSize = Files.size(file);
+        int totalChunks = (int) Math.max(1, (fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        Transfer transfer = new Transfer(UUID.randomUUID().toString(), file, fileName, typeFormat, fileSize, totalChunks);
+
+        transfers.put(transfer.transferId, transfer);
+        start(transfer, cipher, outputTopic);
+        return transfer.completion;
+    }
+
+    // "chunk_resend" - получатель пропустил часть и ждёт её заново
+    public void onAck(FileChunkMessage ack) {
+        Transfer transfer = transfers.get(ack.getTransferId());
+        if (transfer == null) {
+            return;
+        }
+
+        int previous = transfer.acknowledged.getAndAccumulate(ack.getSequence(), Math::max);
+        if (ack.getSequence() > previous) {
+            transfer.failedAttempts.set(0);
+        }
+
+        if (transfer.acknowledged.get() >= transfer.totalChunks) {
+            transfers.remove(transfer.transferId);
+            transfer.completion.complete(null);
+            log.info("Transfer {} of {} is complete", transfer.transferId, transfer.fileName);
+            return;
+        }
+
+        Run run = transfer.current;
+        if (FileTransferReceiver.RESEND_TYPE.equals(ack.getTypeMessage()) && run != null) {
+            log.info("Resend {} from chunk {}", transfer.fileName, transfer.acknowledged.get());
+            start(transfer, run.cipher, run.outputTopic);
+        }
+    }
+
+    // собеседник отключился: отправка останавливается, неподтверждённые передачи ждут resume
+    public void pause() {
+        transfers.values().forEach(transfer -> {
+            transfer.generation.incrementAndGet();
+            transfer.current = null;
+        });
+    }
+
+    // новый ключ: недоставленные передачи продолжаются с первой неподтверждённой части
+    public void resume(MessageCipher cipher, String outputTopic) {
+        transfers.values().forEach(transfer -> {
+            transfer.failedAttempts.set(0);
+            start(transfer, cipher, outputTopic);
+        });
+    }
+
+    public int getActiveTransfers() {
+        return transfers.size();
+    }
+
+    @Override
+    public void close() {
+        pause();
+        transfers.values().forEach(transfer -> transfer.completion.cancel(false));
+        transfers.clear();
+    }
+
+    private void start(Transfer transfer, MessageCipher cipher, String outputTopic) {
+        Run run = new Run(transfer, transfer.generation.incrementAndGet(), cipher, outputTopic);
+        transfer.current = run;
+        run.start();
+    }
+
+    // запуск не дошёл до писателя или брокера: повтор с первой неподтверждённой части через RETRY_DELAY_MS
+    private void retry(Run run, Throwable exception) {
+        Transfer transfer = run.transfer;
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+
+        if (transfer.failedAttempts.incrementAndGet() >= MAX_ATTEMPTS) {
+            log.error("Error while sending {}, wait for reconnect: {}", transfer.fileName, cause.getMessage());
+            return;
+        }
+
+        log.warn("Error while sending {}, resend from chunk {}: {}", transfer.fileName, transfer.acknowledged.get(), cause.getMessage());
+        CompletableFuture.delayedExecutor(RETRY_DELAY_MS, TimeUnit.MILLISECONDS, sendExecutor).execute(() -> {
+            // за время ожидания не было паузы, resume и просьбы отправить заново
+            if (transfer.generation.get() == run.generation) {
+                start(transfer, run.cipher, run.outputTopic);
+            }
+        });
+    }
+
+    private static FileChunkMessage readChunk(Transfer transfer, FileChannel channel, int sequence) throws IOException {
+        long position = (long) sequence * CHUNK_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, transfer.fileSize - position));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("File " + transfer.fileName + " is shorter than " + transfer.fileSize + " bytes");
+            }
+        }
+
+        return FileChunkMessage.builder()
+                .typeMessage("file_chunk")
+                .transferId(transfer.transferId)
+                .sequence(sequence)
+                .totalChunks(transfer.totalChunks)
+                .fileSize(transfer.fileSize)
+                .fileName(transfer.fileName)
+                .typeFormat(transfer.typeFormat)
+                .bytes(buffer.array())
+                .build();
+    }
+
+    // один запуск отправки с первой неподтверждённой части; устаревший запуск (пауза, повтор) ничего не отправляет
+    private final class Run {
+        private final Transfer transfer;
+        private final int generation;
+        private final MessageCipher cipher;
+        private final String outputTopic;
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private int nextSequence;
+        // завершается, когда предыдущая часть передана писателю
+        private CompletableFuture<?> previousHandOff = CompletableFuture.completedFuture(null);
+
+        private Run(Transfer transfer, int generation, MessageCipher cipher, String outputTopic) {
+            this.transfer = transfer;
+            this.generation = generation;
+            this.cipher = cipher;
+            this.outputTopic = outputTopic;
+            this.nextSequence = transfer.acknowledged.get();
+        }
+
+        private boolean isCurrent() {
+            return transfer.generation.get() == generation && !failed.get();
+        }
+
+        private void start() {
+            for (int i = 0; i < PARALLEL_CHUNKS; i++) {
+                launchNext();
+            }
+        }
+
+        private synchronized void launchNext() {
+            if (!isCurrent() || nextSequence >= transfer.totalChunks) {
+                return;
+            }
+
+            int sequence = nextSequence++;
+            CompletableFuture<byte[]> encrypted = CompletableFuture.supplyAsync(() -> encryptChunk(sequence), executorService);
+            // send может ждать лимита писателя: не в пуле шифрования и не в потоке продюсера
+            CompletableFuture<CompletableFuture<RecordMetadata>> handOff = previousHandOff.thenCombineAsync(encrypted,
+                    (previous, bytes) -> sendChunk(bytes), sendExecutor);
+            previousHandOff = handOff;
+
+            handOff.thenCompose(sent -> sent).whenComplete((metadata, exception) -> {
+                if (exception == null) {
+                    launchNext();
+                } else if (isCurrent() && failed.compareAndSet(false, true)) {
+                    retry(this, exception);
+                }
+            });
+        }
+
+        private byte[] encryptChunk(int sequence) {
+            if (!isCurrent()) {
+                throw new CancellationException();
+            }
+
+            try (FileChannel channel = FileChannel.open(transfer.file, StandardOpenOption.READ)) {
+                return cipher.encryptUnordered(readChunk(transfer, channel, sequence).toBytes());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            } catch (ExecutionException ex) {
+                throw new CompletionException(ex.getCause());
+            }
+        }
+
+        private CompletableFuture<RecordMetadata> sendChunk(byte[] bytes) {
+            if (!isCurrent()) {
+                throw new CancellationException();
+            }
+
+            return kafkaWriter.send(bytes, outputTopic, RecordType.FILE_CHUNK);
+        }
+    }
+
+    private static class Transfer {
+        private final String transferId;
+        private final Path file;
+        private final String fileName;
+        private final String typeFormat;
+        private final long fileSize;
+        private final int totalChunks;
+        // первая часть, которую получатель ещё не подтвердил
+        private final AtomicInteger acknowledged = new AtomicInteger();
+        // каждый запуск отправки получает свой номер, устаревший запуск останавливается
+        private final AtomicInteger generation = new AtomicInteger();
+        private final AtomicInteger failedAttempts = new AtomicInteger();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        // null - передача на паузе
+        private volatile Run current;
+
+        private Transfer(String transferId, Path file, String fileName, String typeFormat, long fileSize, int totalChunks) {
+            this.transferId = transferId;
+            this.file = file;
+            this.fileName = fileName;
+            this.typeFormat = typeFormat;
+            this.fileSize = fileSize;
+            this.totalChunks = totalChunks;
+        }
+    }
+}
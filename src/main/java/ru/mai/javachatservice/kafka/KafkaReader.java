@@ -0,0 +1,20 @@
+package ru.mai.javachatservice.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+public interface KafkaReader {
+    // подписка комнаты на топик: записи одной подписки обрабатываются строго по очереди
+    public Subscription subscribe(String topic, String groupId, RecordHandler handler);
+
+    public void close();
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception;
+    }
+
+    public interface Subscription {
+        // не ждёт опроса: консьюмер закроет поток-опросчик на следующем проходе
+        void close();
+    }
+}
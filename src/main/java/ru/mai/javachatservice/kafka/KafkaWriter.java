@@ -1,10 +1,21 @@
 package ru.mai.javachatservice.kafka;
 
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public interface KafkaWriter {
-    public void processing(byte[] messageBytes, String outputTopic);
+    // тип записи уходит в заголовок RecordType.HEADER
+    public void processing(byte[] messageBytes, String outputTopic, RecordType type);
+
+    public default void processing(byte[] messageBytes, String outputTopic) {
+        processing(messageBytes, outputTopic, RecordType.DATA);
+    }
+
+    // future завершается, когда брокер подтвердил запись, или с ошибкой отправки
+    public CompletableFuture<RecordMetadata> send(byte[] messageBytes, String outputTopic, RecordType type);
 
     public void close();
 }
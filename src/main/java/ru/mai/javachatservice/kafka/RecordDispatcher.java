@@ -0,0 +1,31 @@
+package ru.mai.javachatservice.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Реестр обработчиков по типу записи: выбор обработчика - чтение заголовка и поиск в EnumMap
+@Slf4j
+public class RecordDispatcher implements KafkaReader.RecordHandler {
+    private final Map<RecordType, KafkaReader.RecordHandler> handlers = new EnumMap<>(RecordType.class);
+
+    public RecordDispatcher register(RecordType type, KafkaReader.RecordHandler handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    @Override
+    public void handle(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception {
+        RecordType type = RecordType.of(consumerRecord);
+        KafkaReader.RecordHandler handler = type == null ? null : handlers.get(type);
+
+        if (handler == null) {
+            log.warn("Skip record from {} with type {}", consumerRecord.topic(), type);
+            return;
+        }
+
+        handler.handle(consumerRecord);
+    }
+}
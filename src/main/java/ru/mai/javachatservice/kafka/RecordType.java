@@ -0,0 +1,46 @@
+package ru.mai.javachatservice.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+// Тип записи комнаты передаётся однобайтным заголовком Kafka, а не ищется в теле записи:
+// получатель выбирает обработчик до чтения тела, зашифрованные данные сразу идут на расшифровку
+public enum RecordType {
+    CIPHER_INFO((byte) 1),
+    KEY_INFO((byte) 2),
+    DELETE_MESSAGE((byte) 3),
+    DISCONNECT((byte) 4),
+    DATA((byte) 5),
+    FILE_CHUNK((byte) 6),
+    CHUNK_ACK((byte) 7);
+
+    public static final String HEADER = "type";
+    private static final RecordType[] BY_CODE = new RecordType[8];
+
+    static {
+        for (RecordType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    RecordType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    // null - заголовка нет или тип неизвестен
+    public static RecordType of(ConsumerRecord<byte[], byte[]> consumerRecord) {
+        Header header = consumerRecord.headers().lastHeader(HEADER);
+        if (header == null || header.value() == null || header.value().length != 1) {
+            return null;
+        }
+
+        int code = header.value()[0];
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
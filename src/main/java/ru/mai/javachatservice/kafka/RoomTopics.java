@@ -0,0 +1,91 @@
+package ru.mai.javachatservice.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Адрес сессии - имя input_<клиент>_<комната>, его по-прежнему используют RoomView и ChatServer.
+// Обычный режим: у каждой сессии свой топик с этим именем.
+// Общий режим (kafka.transport.shared-topics=true): записи всех комнат идут в несколько секционированных топиков
+// rooms_<n>, ключ записи - номер комнаты (порядок внутри комнаты сохраняется), адрес сессии - в заголовке SESSION_HEADER
+@Component
+public class RoomTopics {
+    public static final String SESSION_HEADER = "session";
+    private static final String SHARED_TOPIC_PREFIX = "rooms_";
+
+    private final boolean shared;
+    private final int topics;
+    private final int partitions;
+
+    public RoomTopics(@Value("${kafka.transport.shared-topics:false}") boolean shared,
+                      @Value("${kafka.transport.topics:4}") int topics,
+                      @Value("${kafka.transport.partitions:12}") int partitions) {
+        if (topics <= 0 || partitions <= 0) {
+            throw new IllegalArgumentException("Illegal shared topics: " + topics + " x " + partitions);
+        }
+
+        this.shared = shared;
+        this.topics = topics;
+        this.partitions = partitions;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public List<String> getSharedTopics() {
+        List<String> names = new ArrayList<>(topics);
+        for (int i = 0; i < topics; i++) {
+            names.add(SHARED_TOPIC_PREFIX + i);
+        }
+        return names;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    // запись для сессии sessionTopic с типом в заголовке RecordType.HEADER
+    public ProducerRecord<byte[], byte[]> toRecord(String sessionTopic, byte[] messageBytes, RecordType type) {
+        ProducerRecord<byte[], byte[]> producerRecord;
+
+        if (shared) {
+            long roomId = roomIdOf(sessionTopic);
+            producerRecord = new ProducerRecord<>(
+                    SHARED_TOPIC_PREFIX + Math.floorMod(roomId, topics),
+                    ByteBuffer.allocate(Long.BYTES).putLong(roomId).array(),
+                    messageBytes
+            );
+            producerRecord.headers().add(SESSION_HEADER, sessionTopic.getBytes(StandardCharsets.UTF_8));
+        } else {
+            producerRecord = new ProducerRecord<>(
+                    sessionTopic,
+                    messageBytes
+            );
+        }
+
+        producerRecord.headers().add(RecordType.HEADER, new byte[]{type.getCode()});
+        return producerRecord;
+    }
+
+    // адрес сессии записи из общего топика, null - заголовка нет
+    public static String sessionOf(ConsumerRecord<byte[], byte[]> consumerRecord) {
+        Header header = consumerRecord.headers().lastHeader(SESSION_HEADER);
+        return header == null || header.value() == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static long roomIdOf(String sessionTopic) {
+        try {
+            return Long.parseLong(sessionTopic.substring(sessionTopic.lastIndexOf('_') + 1));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Illegal session topic: " + sessionTopic, ex);
+        }
+    }
+}
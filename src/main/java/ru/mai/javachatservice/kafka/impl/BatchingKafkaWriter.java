@@ -0,0 +1,221 @@
+package ru.mai.javachatservice.kafka.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordType;
+import ru.mai.javachatservice.kafka.RoomTopics;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Асинхронная отправка пачками: записи всех комнат копятся в продюсере до linger.ms или batch.size
+// и уходят сжатыми пачками, идемпотентность исключает дубли при повторах.
+// Неподтверждённых байт не больше maxInFlightBytes: если лимит исчерпан, send ждёт в вызывающем потоке
+// (не дольше backpressureTimeoutMs), а не копит записи в памяти.
+// По каждому топику считаются записи, байты, ошибки и задержка до подтверждения; средний размер пачки берётся
+// из метрик продюсера. Сводка пишется в лог раз в metricsLogSeconds.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "kafka.writer.batching", havingValue = "true", matchIfMissing = true)
+public class BatchingKafkaWriter implements KafkaWriter {
+    private static final String bootstrapServer = "localhost:9093";
+    private static final String clientId = "producerKafkaWriter";
+    private static final String autoCreateTopics = "true";
+
+    private final KafkaProducer<byte[], byte[]> kafkaProducer;
+    private final RoomTopics roomTopics;
+    private final Semaphore inFlightBytes;
+    private final int maxInFlightBytes;
+    private final long backpressureTimeoutMs;
+    private final Map<String, TopicMetrics> topicMetrics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService metricsService;
+
+    public BatchingKafkaWriter(RoomTopics roomTopics,
+                               @Value("${kafka.writer.linger-ms:5}") int lingerMs,
+                               @Value("${kafka.writer.batch-size:65536}") int batchSize,
+                               @Value("${kafka.writer.compression:lz4}") String compression,
+                               @Value("${kafka.writer.idempotence:true}") boolean idempotence,
+                               @Value("${kafka.writer.max-in-flight-bytes:16777216}") int maxInFlightBytes,
+                               @Value("${kafka.writer.backpressure-timeout-ms:30000}") long backpressureTimeoutMs,
+                               @Value("${kafka.writer.metrics-log-seconds:60}") long metricsLogSeconds) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
+        props.put("auto.create.topics.enable", autoCreateTopics);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
+        if (idempotence) {
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+        }
+        // буфер продюсера больше лимита в полёте: ожидание идёт на семафоре, а не внутри send продюсера
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, (long) maxInFlightBytes + batchSize);
+
+        this.kafkaProducer = new KafkaProducer<>(
+                props,
+                new ByteArraySerializer(),
+                new ByteArraySerializer()
+        );
+        this.roomTopics = roomTopics;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlightBytes = new Semaphore(maxInFlightBytes, true);
+        this.backpressureTimeoutMs = backpressureTimeoutMs;
+
+        if (metricsLogSeconds > 0) {
+            this.metricsService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kafka-writer-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.metricsService.scheduleAtFixedRate(this::logMetrics, metricsLogSeconds, metricsLogSeconds, TimeUnit.SECONDS);
+        } else {
+            this.metricsService = null;
+        }
+    }
+
+    @Override
+    public void processing(byte[] messageBytes, String outputTopic, RecordType type) {
+        send(messageBytes, outputTopic, type).whenComplete((metadata, exception) -> {
+            if (exception != null) {
+                log.error("Error while sending message to {}: {}", outputTopic, exception.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RecordMetadata> send(byte[] messageBytes, String outputTopic, RecordType type) {
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+        ProducerRecord<byte[], byte[]> producerRecord = roomTopics.toRecord(outputTopic, messageBytes, type);
+        // в общем режиме метрики по общим топикам, а не по сессиям
+        TopicMetrics metrics = topicMetrics.computeIfAbsent(producerRecord.topic(), topic -> new TopicMetrics());
+        // запись больше лимита занимает весь лимит
+        int permits = Math.max(1, Math.min(messageBytes.length, maxInFlightBytes));
+
+        try {
+            if (!inFlightBytes.tryAcquire(permits, backpressureTimeoutMs, TimeUnit.MILLISECONDS)) {
+                metrics.failed.increment();
+                result.completeExceptionally(new TimeoutException("In-flight limit of " + maxInFlightBytes + " bytes is exhausted"));
+                return result;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            metrics.failed.increment();
+            result.completeExceptionally(ex);
+            return result;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            kafkaProducer.send(producerRecord, (metadata, exception) -> {
+                inFlightBytes.release(permits);
+
+                if (exception != null) {
+                    metrics.failed.increment();
+                    result.completeExceptionally(exception);
+                } else {
+                    metrics.record(messageBytes.length, System.nanoTime() - start);
+                    result.complete(metadata);
+                }
+            });
+        } catch (Exception ex) {
+            inFlightBytes.release(permits);
+            metrics.failed.increment();
+            result.completeExceptionally(ex);
+        }
+
+        return result;
+    }
+
+    // байты, отправленные, но ещё не подтверждённые
+    public int getInFlightBytes() {
+        return maxInFlightBytes - inFlightBytes.availablePermits();
+    }
+
+    public Map<String, TopicStats> getTopicStats() {
+        Map<String, TopicStats> stats = new TreeMap<>();
+        topicMetrics.forEach((topic, metrics) -> stats.put(topic, metrics.snapshot()));
+        return stats;
+    }
+
+    // средний размер пачки в байтах и число записей в запросе к брокеру по данным продюсера, NaN - пачек ещё не было
+    public double getBatchSizeAvg() {
+        return producerMetric("batch-size-avg");
+    }
+
+    public double getRecordsPerRequestAvg() {
+        return producerMetric("records-per-request-avg");
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        if (metricsService != null) {
+            metricsService.shutdownNow();
+        }
+
+        kafkaProducer.close();
+        logMetrics();
+    }
+
+    private double producerMetric(String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : kafkaProducer.metrics().entrySet()) {
+            if (entry.getKey().group().equals("producer-metrics") && entry.getKey().name().equals(name)
+                    && entry.getValue().metricValue() instanceof Number value) {
+                return value.doubleValue();
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    private void logMetrics() {
+        try {
+            log.info("Kafka writer: in flight {} bytes, batch size avg {}, records per request avg {}",
+                    getInFlightBytes(), getBatchSizeAvg(), getRecordsPerRequestAvg());
+            getTopicStats().forEach((topic, stats) -> log.info("Kafka writer {}: {}", topic, stats));
+        } catch (RuntimeException ex) {
+            log.error("Error while collecting kafka writer metrics: {}", ex.getMessage());
+        }
+    }
+
+    public record TopicStats(long records, long bytes, long failed, double avgLatencyMillis, double maxLatencyMillis) {
+    }
+
+    private static class TopicMetrics {
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(int length, long latency) {
+            records.increment();
+            bytes.add(length);
+            latencyNanos.add(latency);
+            maxLatencyNanos.accumulate(latency);
+        }
+
+        private TopicStats snapshot() {
+            long count = records.sum();
+            return new TopicStats(count, bytes.sum(), failed.sum(),
+                    count == 0 ? 0 : latencyNanos.sum() / 1e6 / count, maxLatencyNanos.get() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package ru.mai.javachatservice.kafka.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.mai.javachatservice.kafka.KafkaReader;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Чтение топиков комнат без потока опроса на каждую открытую вкладку.
+// Несколько потоков-опросчиков по кругу опрашивают свои консьюмеры без ожидания (poll(0)),
+// полученные записи обрабатываются в общем ограниченном пуле; пока пачка подписки обрабатывается,
+// её консьюмер не опрашивается, поэтому порядок сообщений в комнате сохраняется.
+// Молчащая подписка опрашивается всё реже: пауза после пустого poll удваивается от MIN_IDLE_DELAY до MAX_IDLE_DELAY
+// и сбрасывается, когда приходят записи. Опросчик спит до ближайшей подписки, которую пора опросить;
+// будят его новая подписка и конец обработки пачки.
+// У каждой сессии по-прежнему свой KafkaConsumer и своя группа, а у каждого консьюмера группы - свой поток
+// heartbeat, так что потоки ОС всё равно растут с числом сессий. Для большого числа комнат -
+// общие топики (kafka.transport.shared-topics=true, SharedTopicKafkaReader).
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "kafka.transport.shared-topics", havingValue = "false", matchIfMissing = true)
+public class KafkaReaderImpl implements KafkaReader {
+    private static final String bootstrapServer = "localhost:9093";
+    private static final String autoOffsetReset = "earliest";
+    private static final int POLLER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int HANDLER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long MIN_IDLE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_IDLE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofMillis(500);
+
+    private final List<Poller> pollers = new ArrayList<>(POLLER_THREADS);
+    private final ExecutorService handlerService;
+    // close консьюмера ждёт брокер до CLOSE_TIMEOUT, опросчик на это время не останавливается
+    private final ExecutorService closeService;
+    private final AtomicInteger nextPoller = new AtomicInteger();
+
+    public KafkaReaderImpl() {
+        AtomicInteger handlerNumber = new AtomicInteger();
+        this.handlerService = new ThreadPoolExecutor(HANDLER_THREADS, HANDLER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kafka-handler-" + handlerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) handlerService).allowCoreThreadTimeOut(true);
+
+        ThreadPoolExecutor closeExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kafka-consumer-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        closeExecutor.allowCoreThreadTimeOut(true);
+        this.closeService = closeExecutor;
+
+        for (int i = 0; i < POLLER_THREADS; i++) {
+            Poller poller = new Poller();
+            Thread thread = new Thread(poller, "kafka-poller-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            pollers.add(poller);
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String topic, String groupId, RecordHandler handler) {
+        RoomSubscription subscription = new RoomSubscription(topic, groupId, handler);
+        pollers.get(Math.floorMod(nextPoller.getAndIncrement(), pollers.size())).add(subscription);
+        log.info("Subscribed to {}", topic);
+
+        return subscription;
+    }
+
+    public int getActiveSubscriptions() {
+        return pollers.stream().mapToInt(poller -> poller.subscriptions.size()).sum();
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        pollers.forEach(Poller::stop);
+        handlerService.shutdown();
+
+        try {
+            if (!handlerService.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
+                handlerService.shutdownNow();
+            }
+            // опросчики успевают отдать свои консьюмеры на закрытие, пока ждём пул обработчиков
+            closeService.shutdown();
+            if (!closeService.awaitTermination(CLOSE_TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                closeService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            handlerService.shutdownNow();
+            closeService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RoomSubscription implements Subscription {
+        private final String topic;
+        private final String groupId;
+        private final RecordHandler handler;
+        // пачка записей ещё обрабатывается в пуле
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile boolean closed;
+        private KafkaConsumer<byte[], byte[]> kafkaConsumer;
+        // дальше - только в потоке опросчика, кроме pollerThread, который читает dispatch
+        private volatile Thread pollerThread;
+        private long idleDelayNanos;
+        private long nextPollNanos;
+
+        RoomSubscription(String topic, String groupId, RecordHandler handler) {
+            this.topic = topic;
+            this.groupId = groupId;
+            this.handler = handler;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private void dispatch(ConsumerRecords<byte[], byte[]> consumerRecords) {
+            try {
+                for (ConsumerRecord<byte[], byte[]> consumerRecord : consumerRecords) {
+                    if (closed) {
+                        return;
+                    }
+
+                    try {
+                        handler.handle(consumerRecord);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception ex) {
+                        log.error("Error while handling message from {}: {}", topic, ex.getMessage());
+                        log.error(Arrays.deepToString(ex.getStackTrace()));
+                    }
+                }
+            } finally {
+                busy.set(false);
+                // следующую пачку можно забирать сразу, не дожидаясь конца сна опросчика
+                LockSupport.unpark(pollerThread);
+            }
+        }
+    }
+
+    private class Poller implements Runnable {
+        private final Queue<RoomSubscription> added = new ConcurrentLinkedQueue<>();
+        private final List<RoomSubscription> subscriptions = new CopyOnWriteArrayList<>();
+        private volatile boolean isRunning = true;
+        private volatile Thread thread;
+
+        private void add(RoomSubscription subscription) {
+            added.add(subscription);
+            LockSupport.unpark(thread);
+        }
+
+        private void stop() {
+            isRunning = false;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+
+            while (isRunning) {
+                RoomSubscription subscription;
+                while ((subscription = added.poll()) != null) {
+                    open(subscription);
+                }
+
+                long now = System.nanoTime();
+                long parkNanos = MAX_IDLE_DELAY_NANOS;
+                for (RoomSubscription roomSubscription : subscriptions) {
+                    parkNanos = Math.min(parkNanos, poll(roomSubscription, now));
+                }
+
+                if (parkNanos > 0 && added.isEmpty()) {
+                    LockSupport.parkNanos(parkNanos);
+                }
+            }
+
+            subscriptions.forEach(this::release);
+            added.forEach(this::release);
+        }
+
+        // консьюмер создаётся и опрашивается только в потоке опросчика: KafkaConsumer не потокобезопасен.
+        // Закрывает его closeService, когда опросчик уже отпустил консьюмер
+        private void open(RoomSubscription subscription) {
+            if (subscription.closed) {
+                return;
+            }
+
+            try {
+                subscription.kafkaConsumer = new KafkaConsumer<>(
+                        Map.of(
+                                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer,
+                                ConsumerConfig.GROUP_ID_CONFIG, subscription.groupId,
+                                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset
+                        ),
+                        new ByteArrayDeserializer(),
+                        new ByteArrayDeserializer()
+                );
+                subscription.kafkaConsumer.subscribe(Collections.singletonList(subscription.topic));
+                subscription.pollerThread = thread;
+                subscription.nextPollNanos = System.nanoTime();
+                subscriptions.add(subscription);
+            } catch (Exception ex) {
+                log.error("Error while subscribing to {}: {}", subscription.topic, ex.getMessage());
+                release(subscription);
+            }
+        }
+
+        // возвращает, через сколько наносекунд подписку пора опросить снова
+        private long poll(RoomSubscription subscription, long now) {
+            if (subscription.closed) {
+                subscriptions.remove(subscription);
+                release(subscription);
+                return MAX_IDLE_DELAY_NANOS;
+            }
+
+            // занятую подписку опросчик не ждёт: конец обработки пачки его разбудит
+            if (subscription.busy.get()) {
+                return MAX_IDLE_DELAY_NANOS;
+            }
+
+            long untilPoll = subscription.nextPollNanos - now;
+            if (untilPoll > 0) {
+                return untilPoll;
+            }
+
+            try {
+                ConsumerRecords<byte[], byte[]> consumerRecords = subscription.kafkaConsumer.poll(Duration.ZERO);
+                if (consumerRecords.isEmpty()) {
+                    subscription.idleDelayNanos = Math.min(Math.max(subscription.idleDelayNanos * 2, MIN_IDLE_DELAY_NANOS), MAX_IDLE_DELAY_NANOS);
+                    subscription.nextPollNanos = now + subscription.idleDelayNanos;
+                    return subscription.idleDelayNanos;
+                }
+
+                subscription.idleDelayNanos = 0;
+                subscription.nextPollNanos = now;
+                subscription.busy.set(true);
+                handlerService.execute(() -> subscription.dispatch(consumerRecords));
+                return MAX_IDLE_DELAY_NANOS;
+            } catch (RejectedExecutionException ex) {
+                subscription.busy.set(false);
+                return MAX_IDLE_DELAY_NANOS;
+            } catch (Exception ex) {
+                log.error("Error while reading {}: {}", subscription.topic, ex.getMessage());
+                subscriptions.remove(subscription);
+                release(subscription);
+                return MAX_IDLE_DELAY_NANOS;
+            }
+        }
+
+        private void release(RoomSubscription subscription) {
+            subscription.closed = true;
+            KafkaConsumer<byte[], byte[]> kafkaConsumer = subscription.kafkaConsumer;
+            if (kafkaConsumer != null) {
+                subscription.kafkaConsumer = null;
+                try {
+                    closeService.execute(() -> closeConsumer(subscription.topic, kafkaConsumer));
+                } catch (RejectedExecutionException ex) {
+                    // ридер уже остановлен
+                    closeConsumer(subscription.topic, kafkaConsumer);
+                }
+            }
+        }
+    }
+
+    private static void closeConsumer(String topic, KafkaConsumer<byte[], byte[]> kafkaConsumer) {
+        try {
+            kafkaConsumer.close(CLOSE_TIMEOUT);
+        } catch (Exception ex) {
+            log.error("Error while closing consumer of {}: {}", topic, ex.getMessage());
+        }
+        log.info("End kafka reader {}", topic);
+    }
+}
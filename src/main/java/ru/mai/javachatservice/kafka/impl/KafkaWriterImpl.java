@@ -3,22 +3,29 @@ package ru.mai.javachatservice.kafka.impl;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordType;
+import ru.mai.javachatservice.kafka.RoomTopics;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
+// отправка без пакетирования и ограничений, включается свойством kafka.writer.batching=false
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "kafka.writer.batching", havingValue = "false")
 public class KafkaWriterImpl implements KafkaWriter {
     private static final String bootstrapServer = "localhost:9093";
     private static final  String clientId = "producerKafkaWriter";
     private static final String autoCreateTopics = "true";
     private final KafkaProducer<byte[], byte[]> kafkaProducer;
+    private final RoomTopics roomTopics;
 
-    public KafkaWriterImpl() {
+    public KafkaWriterImpl(RoomTopics roomTopics) {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer);
         props.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
@@ -29,22 +36,39 @@ public class KafkaWriterImpl implements KafkaWriter {
                 new ByteArraySerializer(),
                 new ByteArraySerializer()
         );
+        this.roomTopics = roomTopics;
     }
 
     @Override
-    public void processing(byte[] messageBytes, String outputTopic) {
+    public void processing(byte[] messageBytes, String outputTopic, RecordType type) {
         log.info("Sending message to {}...", outputTopic);
 
         try {
-            kafkaProducer.send(new ProducerRecord<>(
-                    outputTopic,
-                    messageBytes
-            ));
+            kafkaProducer.send(roomTopics.toRecord(outputTopic, messageBytes, type));
         } catch (Exception ex) {
             log.error("Error while sending message");
         }
     }
 
+    @Override
+    public CompletableFuture<RecordMetadata> send(byte[] messageBytes, String outputTopic, RecordType type) {
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+
+        try {
+            kafkaProducer.send(roomTopics.toRecord(outputTopic, messageBytes, type), (metadata, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(metadata);
+                }
+            });
+        } catch (Exception ex) {
+            result.completeExceptionally(ex);
+        }
+
+        return result;
+    }
+
     @Override
     public void close() {
         kafkaProducer.close();
@@ -0,0 +1,426 @@
+package ru.mai.javachatservice.kafka.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.mai.javachatservice.kafka.KafkaReader;
+import ru.mai.javachatservice.kafka.RecordType;
+import ru.mai.javachatservice.kafka.RoomTopics;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Чтение общих топиков комнат (RoomTopics в общем режиме): вместо консьюмера и группы на каждую сессию
+// на узле работают consumers консьюмеров одной группы узла, они делят между собой секции общих топиков.
+// Запись по заголовку сессии попадает в очередь сессии из таблицы sessions; очередь сессии разбирает в общем пуле
+// не больше одного потока сразу, поэтому порядок сообщений в комнате сохраняется.
+// Очередь подписанной сессии не длиннее QUEUE_LIMIT: если обработчик не успевает, консьюмер ставит секцию записи
+// на паузу и перечитывает её с этой записи, когда очередь разобрана до RESUME_LIMIT. Пауза задерживает и другие
+// комнаты той же секции, зато память не растёт, а консьюмер продолжает poll и остаётся в группе.
+// Записи для сессии, которая ещё не подписалась (данные шифра приходят до открытия окна комнаты), ждут её:
+// обычные - не дольше PENDING_TTL и не больше PENDING_LIMIT штук, CIPHER_INFO и KEY_INFO - до подписки, по последней
+// записи каждого типа (новая заменяет прежнюю), без них окно комнаты не выработает ключ.
+// У каждого узла своя группа rooms_<kafka.transport.node-id>, поэтому узел видит записи всех комнат, а не только своих
+// секций. Без свойства номер узла - имя хоста; два узла на одном хосте должны задать разные kafka.transport.node-id,
+// иначе они окажутся в одной группе и поделят секции между собой.
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "kafka.transport.shared-topics", havingValue = "true")
+public class SharedTopicKafkaReader implements KafkaReader {
+    private static final String bootstrapServer = "localhost:9093";
+    private static final String autoOffsetReset = "latest";
+    private static final int HANDLER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofMillis(500);
+    // пауза перед пересозданием консьюмера после ошибки, удваивается до RESTART_MAX_DELAY_MS
+    private static final long RESTART_DELAY_MS = 100;
+    private static final long RESTART_MAX_DELAY_MS = 10_000;
+    private static final int PENDING_LIMIT = 64;
+    private static final int QUEUE_LIMIT = 1024;
+    private static final int RESUME_LIMIT = QUEUE_LIMIT / 2;
+    private static final long PENDING_TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long SWEEP_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // сколько записей сессии разбирается за один заход в пул, чтобы одна комната не занимала поток надолго
+    private static final int DRAIN_BATCH = 32;
+
+    private final RoomTopics roomTopics;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final List<SharedConsumer> consumers = new ArrayList<>();
+    private final ExecutorService handlerService;
+
+    public SharedTopicKafkaReader(RoomTopics roomTopics,
+                                  @Value("${kafka.transport.consumers:2}") int consumerCount,
+                                  @Value("${kafka.transport.node-id:}") String nodeId) {
+        this.roomTopics = roomTopics;
+        String groupId = "rooms_" + (nodeId.isBlank() ? hostName() : nodeId);
+        log.info("Shared room topics are read by group {}", groupId);
+
+        AtomicInteger handlerNumber = new AtomicInteger();
+        this.handlerService = new ThreadPoolExecutor(HANDLER_THREADS, HANDLER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "kafka-handler-" + handlerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) handlerService).allowCoreThreadTimeOut(true);
+
+        createTopics();
+
+        for (int i = 0; i < consumerCount; i++) {
+            SharedConsumer consumer = new SharedConsumer(groupId);
+            Thread thread = new Thread(consumer, "kafka-shared-consumer-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            consumers.add(consumer);
+        }
+    }
+
+    // topic - адрес сессии input_<клиент>_<комната>, groupId не нужен: группа одна на узел
+    @Override
+    public Subscription subscribe(String topic, String groupId, RecordHandler handler) {
+        Session session = sessions.compute(topic, (key, current) -> {
+            Session result = current == null ? new Session(key) : current;
+            result.attach(handler);
+            return result;
+        });
+        log.info("Subscribed to {}", topic);
+
+        // закрывается только своя подписка: повторная подписка на ту же сессию заменяет обработчик
+        return () -> sessions.computeIfPresent(topic, (key, current) -> current == session && current.detach(handler) ? null : current);
+    }
+
+    public int getActiveSubscriptions() {
+        return (int) sessions.values().stream().filter(Session::isActive).count();
+    }
+
+    public int getPendingSessions() {
+        return (int) sessions.values().stream().filter(session -> !session.isActive()).count();
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        consumers.forEach(SharedConsumer::stop);
+        handlerService.shutdown();
+
+        try {
+            if (!handlerService.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
+                handlerService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            handlerService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            throw new IllegalStateException("Host name is unknown, set kafka.transport.node-id", ex);
+        }
+    }
+
+    // секционированные топики создаются заранее, иначе брокер создаст их с числом секций по умолчанию
+    private void createTopics() {
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer))) {
+            Set<String> existing = admin.listTopics().names().get(10, TimeUnit.SECONDS);
+            List<NewTopic> missing = roomTopics.getSharedTopics().stream()
+                    .filter(topic -> !existing.contains(topic))
+                    .map(topic -> new NewTopic(topic, roomTopics.getPartitions(), (short) 1))
+                    .toList();
+
+            if (!missing.isEmpty()) {
+                admin.createTopics(missing).all().get(10, TimeUnit.SECONDS);
+                log.info("Created shared room topics {}", missing);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error("Error while creating shared room topics: {}", ex.getMessage());
+        }
+    }
+
+    // false - очередь сессии полна, запись не принята
+    private boolean offer(String topic, ConsumerRecord<byte[], byte[]> consumerRecord) {
+        boolean[] accepted = new boolean[1];
+        sessions.compute(topic, (key, current) -> {
+            Session result = current == null ? new Session(key) : current;
+            accepted[0] = result.offer(consumerRecord);
+            return result;
+        });
+        return accepted[0];
+    }
+
+    // секцию можно читать дальше: сессия разобрала очередь, закрылась или заменена новой подпиской
+    private boolean canResume(String topic) {
+        Session session = sessions.get(topic);
+        return session == null || session.canResume();
+    }
+
+    // удалить устаревшие записи сессий, которые так и не подписались
+    private void sweepPending() {
+        long now = System.nanoTime();
+        for (String topic : sessions.keySet()) {
+            sessions.computeIfPresent(topic, (key, current) -> current.expire(now) ? null : current);
+        }
+    }
+
+    private static boolean isControl(ConsumerRecord<byte[], byte[]> consumerRecord) {
+        RecordType type = RecordType.of(consumerRecord);
+        return type == RecordType.CIPHER_INFO || type == RecordType.KEY_INFO;
+    }
+
+    private final class Session {
+        private final String topic;
+        private final ArrayDeque<ConsumerRecord<byte[], byte[]>> queue = new ArrayDeque<>();
+        // null - сессия ещё не подписалась, записи копятся
+        private RecordHandler handler;
+        private boolean draining;
+        // начало ожидания подписки, после сброса устаревших записей отсчитывается заново
+        private long pendingSinceNanos = System.nanoTime();
+
+        private Session(String topic) {
+            this.topic = topic;
+        }
+
+        private synchronized boolean isActive() {
+            return handler != null;
+        }
+
+        private synchronized boolean canResume() {
+            return handler == null || queue.size() <= RESUME_LIMIT;
+        }
+
+        // true - у ждущей сессии не осталось записей, её можно убрать из таблицы
+        private synchronized boolean expire(long now) {
+            if (handler != null || now - pendingSinceNanos <= PENDING_TTL_NANOS) {
+                return false;
+            }
+
+            int size = queue.size();
+            queue.removeIf(consumerRecord -> !isControl(consumerRecord));
+            if (queue.size() < size) {
+                log.warn("Drop {} records for {}: session is not opened", size - queue.size(), topic);
+            }
+            pendingSinceNanos = now;
+            return queue.isEmpty();
+        }
+
+        private synchronized boolean offer(ConsumerRecord<byte[], byte[]> consumerRecord) {
+            if (handler != null) {
+                if (queue.size() >= QUEUE_LIMIT) {
+                    return false;
+                }
+            } else if (isControl(consumerRecord)) {
+                RecordType type = RecordType.of(consumerRecord);
+                queue.removeIf(queued -> RecordType.of(queued) == type);
+            } else if (queue.stream().filter(queued -> !isControl(queued)).count() >= PENDING_LIMIT) {
+                log.warn("Drop record for {}: session is not opened", topic);
+                dropOldestData();
+            }
+
+            queue.add(consumerRecord);
+            scheduleDrain();
+            return true;
+        }
+
+        private void dropOldestData() {
+            Iterator<ConsumerRecord<byte[], byte[]>> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (!isControl(iterator.next())) {
+                    iterator.remove();
+                    return;
+                }
+            }
+        }
+
+        private synchronized void attach(RecordHandler handler) {
+            this.handler = handler;
+            scheduleDrain();
+        }
+
+        // true - обработчик был текущим и снят, сессию можно убрать из таблицы
+        private synchronized boolean detach(RecordHandler handler) {
+            if (this.handler != handler) {
+                return false;
+            }
+
+            this.handler = null;
+            queue.clear();
+            return true;
+        }
+
+        // вызывается под блокировкой
+        private void scheduleDrain() {
+            if (handler == null || draining || queue.isEmpty()) {
+                return;
+            }
+
+            draining = true;
+            try {
+                handlerService.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                draining = false;
+            }
+        }
+
+        private void drain() {
+            List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(DRAIN_BATCH);
+            RecordHandler current;
+
+            synchronized (this) {
+                current = handler;
+                while (current != null && batch.size() < DRAIN_BATCH && !queue.isEmpty()) {
+                    batch.add(queue.poll());
+                }
+            }
+
+            try {
+                for (ConsumerRecord<byte[], byte[]> consumerRecord : batch) {
+                    try {
+                        current.handle(consumerRecord);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception ex) {
+                        log.error("Error while handling message from {}: {}", topic, ex.getMessage());
+                        log.error(Arrays.deepToString(ex.getStackTrace()));
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    draining = false;
+                    scheduleDrain();
+                }
+            }
+        }
+    }
+
+    private class SharedConsumer implements Runnable {
+        private final String groupId;
+        private volatile boolean isRunning = true;
+
+        private SharedConsumer(String groupId) {
+            this.groupId = groupId;
+        }
+
+        private void stop() {
+            isRunning = false;
+        }
+
+        // ошибка консьюмера не останавливает чтение: консьюмер закрывается и создаётся заново, поток выходит только в stop
+        @Override
+        public void run() {
+            long restartDelayMs = RESTART_DELAY_MS;
+
+            while (isRunning) {
+                KafkaConsumer<byte[], byte[]> kafkaConsumer = null;
+
+                try {
+                    kafkaConsumer = new KafkaConsumer<>(
+                            Map.of(
+                                    ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer,
+                                    ConsumerConfig.GROUP_ID_CONFIG, groupId,
+                                    ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset
+                            ),
+                            new ByteArrayDeserializer(),
+                            new ByteArrayDeserializer()
+                    );
+                    kafkaConsumer.subscribe(roomTopics.getSharedTopics());
+                    long nextSweep = System.nanoTime() + SWEEP_PERIOD_NANOS;
+                    // секции на паузе и сессии, чья полная очередь их остановила; только в потоке консьюмера
+                    Map<TopicPartition, String> paused = new HashMap<>();
+
+                    while (isRunning) {
+                        resumeDrained(kafkaConsumer, paused);
+
+                        ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(POLL_TIMEOUT);
+                        restartDelayMs = RESTART_DELAY_MS;
+                        for (ConsumerRecord<byte[], byte[]> consumerRecord : consumerRecords) {
+                            TopicPartition partition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+                            // остаток секции из этого poll будет прочитан заново после resume
+                            if (paused.containsKey(partition)) {
+                                continue;
+                            }
+
+                            String session = RoomTopics.sessionOf(consumerRecord);
+                            if (session != null && !offer(session, consumerRecord)) {
+                                kafkaConsumer.pause(List.of(partition));
+                                kafkaConsumer.seek(partition, consumerRecord.offset());
+                                paused.put(partition, session);
+                            }
+                        }
+
+                        if (System.nanoTime() - nextSweep > 0) {
+                            sweepPending();
+                            nextSweep = System.nanoTime() + SWEEP_PERIOD_NANOS;
+                        }
+                    }
+                } catch (Exception ex) {
+                    log.error("Error while reading shared room topics, restart consumer in {} ms: {}", restartDelayMs, ex.getMessage());
+                } finally {
+                    if (kafkaConsumer != null) {
+                        try {
+                            kafkaConsumer.close(CLOSE_TIMEOUT);
+                        } catch (Exception ex) {
+                            log.error("Error while closing shared consumer: {}", ex.getMessage());
+                        }
+                    }
+                }
+
+                if (isRunning) {
+                    try {
+                        Thread.sleep(restartDelayMs);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    restartDelayMs = Math.min(restartDelayMs * 2, RESTART_MAX_DELAY_MS);
+                }
+            }
+
+            log.info("End shared kafka reader {}", groupId);
+        }
+
+        // секции, отобранные при перебалансировке, с паузы уже сняты: новый владелец читает их с позиции seek
+        private void resumeDrained(KafkaConsumer<byte[], byte[]> kafkaConsumer, Map<TopicPartition, String> paused) {
+            if (paused.isEmpty()) {
+                return;
+            }
+
+            Set<TopicPartition> assignment = kafkaConsumer.assignment();
+            List<TopicPartition> drained = new ArrayList<>();
+            paused.entrySet().removeIf(entry -> {
+                if (!assignment.contains(entry.getKey())) {
+                    return true;
+                }
+                if (!canResume(entry.getValue())) {
+                    return false;
+                }
+
+                drained.add(entry.getKey());
+                return true;
+            });
+
+            if (!drained.isEmpty()) {
+                kafkaConsumer.resume(drained);
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.model.messages.binary_codec.MessageCodec;
 import ru.mai.javachatservice.model.client.CipherInfo;
 import ru.mai.javachatservice.model.client.RoomInfo;
 
@@ -42,13 +43,7 @@ public class CipherInfoMessage {
     }
 
     public byte[] toBytes() {
-        try {
-            return mapper.writeValueAsString(this).getBytes();
-        } catch (JsonProcessingException ex) {
-            log.error("Error while processing message to json bytes");
-        }
-
-        return new byte[0];
+        return MessageCodec.encode(this);
     }
 
     @Override
@@ -0,0 +1,44 @@
+package ru.mai.javachatservice.model.messages;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.model.messages.binary_codec.MessageCodec;
+
+// Часть вложения ("file_chunk", шифруется целиком), подтверждение приёма ("chunk_ack", без bytes,
+// sequence - номер первой ещё не принятой части) или просьба после пропуска отправить заново с sequence ("chunk_resend")
+@Data
+@Slf4j
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileChunkMessage {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private String typeMessage;
+    private String transferId;
+    private int sequence;
+    private int totalChunks;
+    private long fileSize;
+    private String fileName;
+    private String typeFormat;
+    private byte[] bytes;
+
+    public byte[] toBytes() {
+        return MessageCodec.encode(this);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return mapper.writeValueAsString(this);
+        } catch (JsonProcessingException ex) {
+            log.error("Error while processing message to json bytes");
+        }
+
+        return "";
+    }
+}
@@ -7,6 +7,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.model.messages.binary_codec.MessageCodec;
 
 @Data
 @Slf4j
@@ -22,13 +23,7 @@ public class Message {
     private byte[] bytes;
 
     public byte[] toBytes() {
-        try {
-            return mapper.writeValueAsString(this).getBytes();
-        } catch (JsonProcessingException ex) {
-            log.error("Error while processing message to json bytes");
-        }
-
-        return new byte[0];
+        return MessageCodec.encode(this);
     }
 
     @Override
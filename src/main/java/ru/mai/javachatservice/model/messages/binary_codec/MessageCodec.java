@@ -0,0 +1,255 @@
+package ru.mai.javachatservice.model.messages.binary_codec;
+
+import ru.mai.javachatservice.model.messages.CipherInfoMessage;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+import ru.mai.javachatservice.model.messages.KeyMessage;
+import ru.mai.javachatservice.model.messages.Message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Двоичный формат сообщений вместо JSON: вложения идут как есть, без Base64.
+// Запись: байт версии, байт вида сообщения, затем поля по порядку. Строки - UTF-8, строки и массивы
+// с 4-байтной длиной впереди (-1 - null), числа в big-endian.
+// Кодирует в byte[] или в ByteBuffer с его position, декодирует с position буфера и сдвигает её.
+public class MessageCodec {
+    public static final byte VERSION = 1;
+    private static final byte KIND_MESSAGE = 1;
+    private static final byte KIND_KEY_MESSAGE = 2;
+    private static final byte KIND_CIPHER_INFO_MESSAGE = 3;
+    private static final byte KIND_FILE_CHUNK_MESSAGE = 4;
+    private static final int HEADER_LENGTH = 2;
+    private static final int NULL_LENGTH = -1;
+
+    private MessageCodec() {
+    }
+
+    public static byte[] encode(Message message) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(message));
+        encode(message, buffer);
+        return buffer.array();
+    }
+
+    public static byte[] encode(KeyMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(message));
+        encode(message, buffer);
+        return buffer.array();
+    }
+
+    public static byte[] encode(CipherInfoMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(message));
+        encode(message, buffer);
+        return buffer.array();
+    }
+
+    public static byte[] encode(FileChunkMessage message) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(message));
+        encode(message, buffer);
+        return buffer.array();
+    }
+
+    public static int encodedLength(Message message) {
+        return HEADER_LENGTH + sizeOf(message.getTypeMessage()) + sizeOf(message.getTypeFormat())
+                + sizeOf(message.getFileName()) + Integer.BYTES + sizeOf(message.getBytes());
+    }
+
+    public static int encodedLength(KeyMessage message) {
+        return HEADER_LENGTH + sizeOf(message.getTypeMessage()) + sizeOf(message.getPublicKey());
+    }
+
+    public static int encodedLength(CipherInfoMessage message) {
+        return HEADER_LENGTH + sizeOf(message.getTypeMessage()) + Long.BYTES + sizeOf(message.getNameAlgorithm())
+                + sizeOf(message.getNamePadding()) + sizeOf(message.getEncryptionMode()) + 2 * Integer.BYTES
+                + sizeOf(message.getInitializationVector()) + sizeOf(message.getPublicKey())
+                + sizeOf(message.getP()) + sizeOf(message.getG());
+    }
+
+    public static int encodedLength(FileChunkMessage message) {
+        return HEADER_LENGTH + sizeOf(message.getTypeMessage()) + sizeOf(message.getTransferId()) + 2 * Integer.BYTES
+                + Long.BYTES + sizeOf(message.getFileName()) + sizeOf(message.getTypeFormat()) + sizeOf(message.getBytes());
+    }
+
+    // места в target должно хватать на encodedLength, иначе BufferOverflowException
+    public static void encode(Message message, ByteBuffer target) {
+        putHeader(target, KIND_MESSAGE);
+        putString(target, message.getTypeMessage());
+        putString(target, message.getTypeFormat());
+        putString(target, message.getFileName());
+        target.putInt(message.getIndexMessage());
+        putBytes(target, message.getBytes());
+    }
+
+    public static void encode(KeyMessage message, ByteBuffer target) {
+        putHeader(target, KIND_KEY_MESSAGE);
+        putString(target, message.getTypeMessage());
+        putBytes(target, message.getPublicKey());
+    }
+
+    public static void encode(CipherInfoMessage message, ByteBuffer target) {
+        putHeader(target, KIND_CIPHER_INFO_MESSAGE);
+        putString(target, message.getTypeMessage());
+        target.putLong(message.getAnotherClientId());
+        putString(target, message.getNameAlgorithm());
+        putString(target, message.getNamePadding());
+        putString(target, message.getEncryptionMode());
+        target.putInt(message.getSizeKeyInBits());
+        target.putInt(message.getSizeBlockInBits());
+        putBytes(target, message.getInitializationVector());
+        putBytes(target, message.getPublicKey());
+        putBytes(target, message.getP());
+        putBytes(target, message.getG());
+    }
+
+    public static void encode(FileChunkMessage message, ByteBuffer target) {
+        putHeader(target, KIND_FILE_CHUNK_MESSAGE);
+        putString(target, message.getTypeMessage());
+        putString(target, message.getTransferId());
+        target.putInt(message.getSequence());
+        target.putInt(message.getTotalChunks());
+        target.putLong(message.getFileSize());
+        putString(target, message.getFileName());
+        putString(target, message.getTypeFormat());
+        putBytes(target, message.getBytes());
+    }
+
+    public static Message decodeMessage(byte[] bytes) {
+        return decodeMessage(ByteBuffer.wrap(bytes));
+    }
+
+    public static KeyMessage decodeKeyMessage(byte[] bytes) {
+        return decodeKeyMessage(ByteBuffer.wrap(bytes));
+    }
+
+    public static CipherInfoMessage decodeCipherInfoMessage(byte[] bytes) {
+        return decodeCipherInfoMessage(ByteBuffer.wrap(bytes));
+    }
+
+    public static FileChunkMessage decodeFileChunkMessage(byte[] bytes) {
+        return decodeFileChunkMessage(ByteBuffer.wrap(bytes));
+    }
+
+    // повреждённая или чужая запись - IllegalArgumentException
+    public static Message decodeMessage(ByteBuffer source) {
+        try {
+            checkHeader(source, KIND_MESSAGE);
+            return Message.builder()
+                    .typeMessage(getString(source))
+                    .typeFormat(getString(source))
+                    .fileName(getString(source))
+                    .indexMessage(source.getInt())
+                    .bytes(getBytes(source))
+                    .build();
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Message is truncated!", ex);
+        }
+    }
+
+    public static KeyMessage decodeKeyMessage(ByteBuffer source) {
+        try {
+            checkHeader(source, KIND_KEY_MESSAGE);
+            return KeyMessage.builder()
+                    .typeMessage(getString(source))
+                    .publicKey(getBytes(source))
+                    .build();
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Key message is truncated!", ex);
+        }
+    }
+
+    public static CipherInfoMessage decodeCipherInfoMessage(ByteBuffer source) {
+        try {
+            checkHeader(source, KIND_CIPHER_INFO_MESSAGE);
+            return CipherInfoMessage.builder()
+                    .typeMessage(getString(source))
+                    .anotherClientId(source.getLong())
+                    .nameAlgorithm(getString(source))
+                    .namePadding(getString(source))
+                    .encryptionMode(getString(source))
+                    .sizeKeyInBits(source.getInt())
+                    .sizeBlockInBits(source.getInt())
+                    .initializationVector(getBytes(source))
+                    .publicKey(getBytes(source))
+                    .p(getBytes(source))
+                    .g(getBytes(source))
+                    .build();
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Cipher info message is truncated!", ex);
+        }
+    }
+
+    public static FileChunkMessage decodeFileChunkMessage(ByteBuffer source) {
+        try {
+            checkHeader(source, KIND_FILE_CHUNK_MESSAGE);
+            return FileChunkMessage.builder()
+                    .typeMessage(getString(source))
+                    .transferId(getString(source))
+                    .sequence(source.getInt())
+                    .totalChunks(source.getInt())
+                    .fileSize(source.getLong())
+                    .fileName(getString(source))
+                    .typeFormat(getString(source))
+                    .bytes(getBytes(source))
+                    .build();
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("File chunk message is truncated!", ex);
+        }
+    }
+
+    private static void putHeader(ByteBuffer target, byte kind) {
+        target.put(VERSION);
+        target.put(kind);
+    }
+
+    private static void checkHeader(ByteBuffer source, byte kind) {
+        byte version = source.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported message version: " + version);
+        }
+
+        byte actualKind = source.get();
+        if (actualKind != kind) {
+            throw new IllegalArgumentException("Unexpected message kind: " + actualKind + ", expected " + kind);
+        }
+    }
+
+    private static int sizeOf(String value) {
+        return Integer.BYTES + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer target, String value) {
+        putBytes(target, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void putBytes(ByteBuffer target, byte[] value) {
+        if (value == null) {
+            target.putInt(NULL_LENGTH);
+        } else {
+            target.putInt(value.length);
+            target.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer source) {
+        byte[] bytes = getBytes(source);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getBytes(ByteBuffer source) {
+        int length = source.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > source.remaining()) {
+            throw new IllegalArgumentException("Illegal field length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return bytes;
+    }
+}
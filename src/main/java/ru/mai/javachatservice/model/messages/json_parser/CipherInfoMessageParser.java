@@ -1,29 +1,44 @@
 package ru.mai.javachatservice.model.messages.json_parser;
 
 import lombok.extern.slf4j.Slf4j;
+import ru.mai.javachatservice.cipher.ChaCha20Poly1305Encryption;
+import ru.mai.javachatservice.cipher.KeystreamEncryption;
+import ru.mai.javachatservice.cipher.MessageCipher;
 import ru.mai.javachatservice.cipher.SymmetricEncryption;
-import ru.mai.javachatservice.cipher.cipher_impl.RC6;
-import ru.mai.javachatservice.cipher.cipher_impl.Serpent;
+import ru.mai.javachatservice.cipher.cipher_impl.AES;
+import ru.mai.javachatservice.cipher.cipher_impl.ChaCha20Poly1305;
+import ru.mai.javachatservice.cipher.cipher_impl.KeyScheduleCache;
 import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
 import ru.mai.javachatservice.model.messages.CipherInfoMessage;
 
 import java.math.BigInteger;
 import java.util.Arrays;
 
-import static ru.mai.javachatservice.cipher.utils.BinaryOperations.byteToIntArray;
-
 @Slf4j
 public class CipherInfoMessageParser {
     private static final String UNEXPECTED_VALUE = "Unexpected value: ";
+    private static final String CHACHA20_POLY1305 = "CHACHA20_POLY1305";
+    private static final int KEY_SCHEDULE_CACHE_SIZE = 64;
+    private static final KeyScheduleCache KEY_SCHEDULE_CACHE = new KeyScheduleCache(KEY_SCHEDULE_CACHE_SIZE);
 
     private CipherInfoMessageParser() {
     }
-    public static SymmetricEncryption getCipher(CipherInfoMessage cipherInfo, BigInteger privateKey, BigInteger modulo) {
+    public static MessageCipher getCipher(CipherInfoMessage cipherInfo, BigInteger privateKey, BigInteger modulo) {
+        return getCipher(cipherInfo, privateKey, modulo, CryptoExecutor.getShared());
+    }
+
+    // для CHACHA20_POLY1305 дополнение и режим из CipherInfo не используются
+    public static MessageCipher getCipher(CipherInfoMessage cipherInfo, BigInteger privateKey, BigInteger modulo, CryptoExecutor cryptoExecutor) {
         byte[] key = getKey(cipherInfo.getPublicKey(), cipherInfo.getSizeKeyInBits(), privateKey, modulo);
         byte[] initializationVector = cipherInfo.getInitializationVector();
 
         log.info(Arrays.toString(key));
 
+        if (cipherInfo.getNameAlgorithm().equals(CHACHA20_POLY1305)) {
+            return new ChaCha20Poly1305Encryption(new ChaCha20Poly1305(key, cryptoExecutor));
+        }
+
         CipherAlgorithms cipherAlgorithms = getCipherService(
                 cipherInfo.getNameAlgorithm(),
                 key,
@@ -31,12 +46,24 @@ public class CipherInfoMessageParser {
                 cipherInfo.getSizeBlockInBits()
         );
 
-        return new SymmetricEncryption(
+        SymmetricEncryption symmetricEncryption = new SymmetricEncryption(
                 getEncryptionMode(cipherInfo.getEncryptionMode()),
                 getPadding(cipherInfo.getNamePadding()),
                 cipherAlgorithms,
-                initializationVector
+                initializationVector,
+                SymmetricEncryption.EncryptionEngine.LANES,
+                cryptoExecutor
         );
+
+        // CTR и OFB: строки чата шифруются заранее выработанным ключевым потоком сессии
+        if (symmetricEncryption.supportsKeystreamSessions()) {
+            return new KeystreamEncryption(symmetricEncryption);
+        }
+        return symmetricEncryption;
+    }
+
+    public static KeyScheduleCache getKeyScheduleCache() {
+        return KEY_SCHEDULE_CACHE;
     }
 
     public static byte[] getKey(byte[] publicKey, int sizeKeyInBits, BigInteger privateKey, BigInteger modulo) {
@@ -50,8 +77,9 @@ public class CipherInfoMessageParser {
 
     public static CipherAlgorithms getCipherService(String nameAlgorithm, byte[] key, int sizeKeyInBits, int sizeBlockInBits) {
         return switch (nameAlgorithm) {
-            case "SERPENT" -> new Serpent(sizeKeyInBits, byteToIntArray(key));
-            case "RC6" -> new RC6(key);
+            case "SERPENT" -> KEY_SCHEDULE_CACHE.getSerpent(sizeKeyInBits, key);
+            case "RC6" -> KEY_SCHEDULE_CACHE.getRC6(key);
+            case "AES" -> new AES(key);
             default -> throw new IllegalStateException(UNEXPECTED_VALUE + nameAlgorithm);
         };
 
@@ -71,11 +99,11 @@ public class CipherInfoMessageParser {
         return switch (encryptionMode) {
             case "ECB" -> SymmetricEncryption.EncryptionModes.ECB;
             case "CBC" -> SymmetricEncryption.EncryptionModes.CBC;
-            case "CFB" -> SymmetricEncryption.EncryptionModes.ECB;
-            case "CTR" -> SymmetricEncryption.EncryptionModes.CBC;
+            case "CFB" -> SymmetricEncryption.EncryptionModes.CFB;
+            case "CTR" -> SymmetricEncryption.EncryptionModes.CTR;
             case "PCBC" -> SymmetricEncryption.EncryptionModes.PCBC;
             case "RANDOM_DELTA" -> SymmetricEncryption.EncryptionModes.RANDOM_DELTA;
-            case "OFB" -> SymmetricEncryption.EncryptionModes.ECB;
+            case "OFB" -> SymmetricEncryption.EncryptionModes.OFB;
             default -> throw new IllegalStateException(UNEXPECTED_VALUE + encryptionMode);
         };
     }
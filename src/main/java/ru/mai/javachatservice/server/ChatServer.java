@@ -6,6 +6,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.stereotype.Service;
 import ru.mai.javachatservice.cipher.diffie_hellman.DiffieHellman;
 import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordType;
 import ru.mai.javachatservice.model.client.CipherInfo;
 import ru.mai.javachatservice.model.client.ClientInfo;
 import ru.mai.javachatservice.model.client.MessageInfo;
@@ -180,8 +181,8 @@ public synchronized void disconnectFromRoom(long clientId, long roomId) {
             CipherInfoMessage firstMessage = new CipherInfoMessage(firstClientId, firstCipherInfo, roomInfo);
             CipherInfoMessage secondMessage = new CipherInfoMessage(secondClientId, secondCipherInfo, roomInfo);
 
-            kafkaWriter.processing(firstMessage.toBytes(), outputTopicFirst);
-            kafkaWriter.processing(secondMessage.toBytes(), outputTopicSecond);
+            kafkaWriter.processing(firstMessage.toBytes(), outputTopicFirst, RecordType.CIPHER_INFO);
+            kafkaWriter.processing(secondMessage.toBytes(), outputTopicSecond, RecordType.CIPHER_INFO);
 
             return true;
         }
@@ -54,7 +54,7 @@ public class AuthorizationView extends VerticalLayout {
     private void showEncryptionOptions() {
         // Алгоритмы шифрования
         ComboBox<String> encryptionAlgorithmComboBox = new ComboBox<>("Выберите алгоритм шифрования");
-        encryptionAlgorithmComboBox.setItems("SERPENT", "RC6");
+        encryptionAlgorithmComboBox.setItems("SERPENT", "RC6", "AES", "AES_192", "AES_256", "CHACHA20_POLY1305");
         encryptionAlgorithmComboBox.setValue("SERPENT");
         encryptionAlgorithmComboBox.setWidthFull();
 
@@ -62,6 +62,8 @@ public class AuthorizationView extends VerticalLayout {
         Button infoAlgorithmButton = createInfoButton("Алгоритмы шифрования",
                 "SERPENT – Надёжный и очень безопасный алгоритм. Он подходит для защиты данных, где требуется высокий уровень безопасности. Работает медленнее, но обеспечивает отличную защиту.\n" +
                         "RC6 – Быстрый алгоритм шифрования, подходит для случаев, где важна скорость. Однако он может уступать в безопасности в некоторых сценариях, по сравнению с SERPENT.\n" +
+                        "AES – Стандарт шифрования, самый быстрый из доступных: выполняется аппаратными инструкциями процессора. AES_192 и AES_256 используют более длинный ключ.\n" +
+                        "CHACHA20_POLY1305 – Быстрый поточный шифр с проверкой целостности сообщений. Режим и набивка для него не используются.\n" +
                         "Совет: Выберите SERPENT, если не уверены, так как он более безопасен.");
 
         // Режимы шифрования
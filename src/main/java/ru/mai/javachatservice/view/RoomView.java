@@ -1,7 +1,6 @@
 package ru.mai.javachatservice.view;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vaadin.flow.component.Component;
 import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.UI;
@@ -15,43 +14,46 @@ import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.component.upload.Upload;
-import com.vaadin.flow.component.upload.receivers.MultiFileMemoryBuffer;
+import com.vaadin.flow.component.upload.receivers.MultiFileBuffer;
 import com.vaadin.flow.router.BeforeEvent;
 import com.vaadin.flow.router.HasUrlParameter;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.router.WildcardParameter;
+import com.vaadin.flow.server.InputStreamFactory;
 import com.vaadin.flow.server.StreamResource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 //import ru.mai.javachatservice.cipher.Cipher;
-import ru.mai.javachatservice.cipher.SymmetricEncryption;
+import ru.mai.javachatservice.cipher.MessageCipher;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
+import ru.mai.javachatservice.file_transfer.FileTransferReceiver;
+import ru.mai.javachatservice.file_transfer.FileTransferSender;
+import ru.mai.javachatservice.kafka.KafkaReader;
 import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordDispatcher;
+import ru.mai.javachatservice.kafka.RecordType;
 import ru.mai.javachatservice.model.messages.CipherInfoMessage;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
 import ru.mai.javachatservice.model.messages.KeyMessage;
 import ru.mai.javachatservice.model.messages.Message;
+import ru.mai.javachatservice.model.messages.binary_codec.MessageCodec;
 import ru.mai.javachatservice.model.messages.json_parser.CipherInfoMessageParser;
-import ru.mai.javachatservice.model.messages.json_parser.MessageParser;
 import ru.mai.javachatservice.server.ChatServer;
 
 //import java.awt.*;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
-import java.time.Duration;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Route("room")
@@ -60,11 +62,16 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
     private long clientId;
     private long roomId;
     private final KafkaWriter kafkaWriter;
+    private final KafkaReader kafkaReader;
+    private final CryptoExecutor cryptoExecutor;
     private String outputTopic;
-    private volatile SymmetricEncryption symmetricEncryptionEncrypt;
-    private final ExecutorService service = Executors.newSingleThreadExecutor();
+    private volatile MessageCipher symmetricEncryptionEncrypt;
     private MessagesLayoutWrapper messagesLayoutWrapper;
     private long anotherClientId;
+    private final FileTransferSender fileTransferSender;
+    // временные файлы загрузок окна (MultiFileBuffer): отправитель читает их до подтверждения, окно показывает
+    // своё сообщение из них же; все оставшиеся удаляются при закрытии окна
+    private final Set<Path> uploadFiles = ConcurrentHashMap.newKeySet();
     private final Backend backend;
 
     @Override
@@ -79,16 +86,19 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
             Notification.show("Пользователь не найден");
             setEnabled(false);
         } else {
-            service.submit(backend::startKafka);
+            backend.startKafka();
             server.addWindow("room/" + clientId + "/" + roomId, event.getUI());
         }
     }
 
-    public RoomView(ChatServer server, KafkaWriter kafkaWriter) {
+    public RoomView(ChatServer server, KafkaWriter kafkaWriter, KafkaReader kafkaReader, CryptoExecutor cryptoExecutor) {
         this.server = server;
         this.kafkaWriter = kafkaWriter;
+        this.kafkaReader = kafkaReader;
+        this.cryptoExecutor = cryptoExecutor;
         this.outputTopic = null;
         this.symmetricEncryptionEncrypt = null;
+        this.fileTransferSender = new FileTransferSender(kafkaWriter, cryptoExecutor);
         new Frontend().setPage();
         this.backend = new Backend();
     }
@@ -98,24 +108,51 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
         server.disconnectFromRoom(clientId, roomId);
 
         if (outputTopic != null) {
-            kafkaWriter.processing(new Message("disconnect", null, null, 0, null).toBytes(), outputTopic);
+            kafkaWriter.processing(new Message("disconnect", null, null, 0, null).toBytes(), outputTopic, RecordType.DISCONNECT);
         }
 
         server.disconnectFromRoom(clientId, roomId);
+        // подписка снимается сразу, консьюмер закроет поток-опросчик KafkaReader
         backend.close();
+        uploadFiles.forEach(this::deleteUpload);
 
-        service.shutdown();
+        log.info("end service");
+    }
 
+    private void deleteUpload(Path file) {
+        uploadFiles.remove(file);
         try {
-            if (!service.awaitTermination(1000, TimeUnit.MILLISECONDS)) {
-                service.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            service.shutdownNow();
-            Thread.currentThread().interrupt();
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.error(ex.getMessage());
         }
+    }
 
-        log.info("end service");
+    // отправленный файл удаляется, когда получатель подтвердил его целиком и сообщение с ним убрано со страницы
+    private class SentUpload {
+        private final Path file;
+        private boolean acknowledged;
+        private boolean shown = true;
+
+        private SentUpload(Path file) {
+            this.file = file;
+        }
+
+        private synchronized void acknowledge() {
+            acknowledged = true;
+            deleteIfUnused();
+        }
+
+        private synchronized void hide() {
+            shown = false;
+            deleteIfUnused();
+        }
+
+        private void deleteIfUnused() {
+            if (acknowledged && !shown) {
+                deleteUpload(file);
+            }
+        }
     }
 
     public class MessagesLayoutWrapper {
@@ -183,6 +220,20 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
         }
 
         public void showImageMessage(String nameFile, byte[] data, Destination destination) {
+            showImageMessage(nameFile, () -> new ByteArrayInputStream(data), destination, null);
+        }
+
+        // вложение из файла на диске: в память целиком не читается
+        public void showImageMessage(String nameFile, Path file, Destination destination) {
+            showImageMessage(nameFile, fileStream(file), destination, null);
+        }
+
+        // onRemoved - сообщение убрано со страницы (удалено, очищено или окно закрыто)
+        public void showImageMessage(String nameFile, Path file, Destination destination, Runnable onRemoved) {
+            showImageMessage(nameFile, fileStream(file), destination, onRemoved);
+        }
+
+        private void showImageMessage(String nameFile, InputStreamFactory data, Destination destination, Runnable onRemoved) {
             Optional<UI> uiOptional = getUI();
 
             if (uiOptional.isPresent()) {
@@ -191,10 +242,13 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                 ui.access(() -> {
                     Div imageDiv = new Div();
 
-                    StreamResource resource = new StreamResource(nameFile, () -> new ByteArrayInputStream(data));
+                    StreamResource resource = new StreamResource(nameFile, data);
                     Image image = new Image(resource, "Uploaded image");
 
                     imageDiv.add(image);
+                    if (onRemoved != null) {
+                        imageDiv.addDetachListener(event -> onRemoved.run());
+                    }
 
                     if (destination.equals(Destination.OWN)) {
                         imageDiv.getStyle()
@@ -226,6 +280,18 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
         }
 
         public void showFileMessage(String nameFile, byte[] data, Destination destination) {
+            showFileMessage(nameFile, () -> new ByteArrayInputStream(data), destination, null);
+        }
+
+        public void showFileMessage(String nameFile, Path file, Destination destination) {
+            showFileMessage(nameFile, fileStream(file), destination, null);
+        }
+
+        public void showFileMessage(String nameFile, Path file, Destination destination, Runnable onRemoved) {
+            showFileMessage(nameFile, fileStream(file), destination, onRemoved);
+        }
+
+        private void showFileMessage(String nameFile, InputStreamFactory data, Destination destination, Runnable onRemoved) {
             Optional<UI> uiOptional = getUI();
 
             if (uiOptional.isPresent()) {
@@ -233,7 +299,7 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
 
                 ui.access(() -> {
                     Div fileDiv = new Div();
-                    StreamResource resource = new StreamResource(nameFile, () -> new ByteArrayInputStream(data));
+                    StreamResource resource = new StreamResource(nameFile, data);
 
                     Anchor downloadLink = new Anchor(resource, "");
                     downloadLink.getElement().setAttribute("download", true);
@@ -241,6 +307,9 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                     Button downloadButton = new Button(nameFile, event -> downloadLink.getElement().callJsFunction("click"));
 
                     fileDiv.add(downloadButton, downloadLink);
+                    if (onRemoved != null) {
+                        fileDiv.addDetachListener(event -> onRemoved.run());
+                    }
 
                     if (destination.equals(Destination.OWN)) {
                         fileDiv.getStyle()
@@ -284,7 +353,7 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                 Button confirmButton = new Button("Да", e -> {
                     int indexMessage = messagesLayout.indexOf(fileDiv);
                     messagesLayout.remove(fileDiv);
-                    kafkaWriter.processing(new Message("delete_message", "text", null, indexMessage, null).toBytes(), outputTopic);
+                    kafkaWriter.processing(new Message("delete_message", "text", null, indexMessage, null).toBytes(), outputTopic, RecordType.DELETE_MESSAGE);
                     confirmDialog.close();
                 });
                 Button cancelButton = new Button("Нет", e -> confirmDialog.close());
@@ -317,12 +386,22 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                 });
             }
         }
+
+        private InputStreamFactory fileStream(Path file) {
+            return () -> {
+                try {
+                    return Files.newInputStream(file);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            };
+        }
     }
 
     public class Frontend {
         private static final String TYPE_MESSAGE = "message";
         private final TextField messageField;
-        private final List<Pair<String, InputStream>> filesData = new ArrayList<>();
+        private final List<Pair<String, File>> filesData = new ArrayList<>();
         private VerticalLayout layoutColumn3;
 
         public Frontend() {
@@ -377,18 +456,20 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                 Notification.show("Ошибка: не удалось отправить сообщение");
             } else {
                 try {
-                    for (Pair<String, InputStream> file : filesData) {
-                        byte[] bytesFile = readBytesFromInputStream(file.getRight());
+                    // вложения уходят частями в фоне, файл читается с диска по частям
+                    for (Pair<String, File> file : filesData) {
+                        Path path = file.getRight().toPath();
                         String format = getTypeFormat(file.getLeft());
-                        Message message = new Message(TYPE_MESSAGE, format, file.getLeft(), 0, bytesFile);
-                        byte[] messageBytes = message.toBytes();
-                        kafkaWriter.processing(symmetricEncryptionEncrypt.encrypt(messageBytes), outputTopic);
-                        server.saveMessage(clientId, anotherClientId, message);
+                        SentUpload upload = new SentUpload(path);
+                        fileTransferSender.send(path, file.getLeft(), format, symmetricEncryptionEncrypt, outputTopic)
+                                .thenRun(upload::acknowledge);
+                        // в историю попадает описание вложения без содержимого
+                        server.saveMessage(clientId, anotherClientId, new Message(TYPE_MESSAGE, format, file.getLeft(), 0, null));
 
                         if (format.equals("image")) {
-                            messagesLayoutWrapper.showImageMessage(file.getLeft(), bytesFile, MessagesLayoutWrapper.Destination.OWN);
+                            messagesLayoutWrapper.showImageMessage(file.getLeft(), path, MessagesLayoutWrapper.Destination.OWN, upload::hide);
                         } else {
-                            messagesLayoutWrapper.showFileMessage(file.getLeft(), bytesFile, MessagesLayoutWrapper.Destination.OWN);
+                            messagesLayoutWrapper.showFileMessage(file.getLeft(), path, MessagesLayoutWrapper.Destination.OWN, upload::hide);
                         }
                     }
 
@@ -400,7 +481,7 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
                     if (!textMessage.isEmpty()) {
                         Message message = new Message(TYPE_MESSAGE, "text", "text", 0, textMessage.getBytes());
                         byte[] messageBytes = message.toBytes();
-                        kafkaWriter.processing(symmetricEncryptionEncrypt.encrypt(messageBytes), outputTopic);
+                        kafkaWriter.processing(symmetricEncryptionEncrypt.encrypt(messageBytes), outputTopic, RecordType.DATA);
                         server.saveMessage(clientId, anotherClientId, message);
                         messagesLayoutWrapper.showTextMessage(textMessage, MessagesLayoutWrapper.Destination.OWN);
                     }
@@ -473,8 +554,9 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
 
 
         private Upload getUploadButton() {
-            MultiFileMemoryBuffer multiFileMemoryBuffer = new MultiFileMemoryBuffer();
-            Upload uploadButton = new Upload(multiFileMemoryBuffer);
+            // загруженные файлы хранятся во временных файлах, а не в памяти; удаляет их окно (uploadFiles)
+            MultiFileBuffer multiFileBuffer = new MultiFileBuffer();
+            Upload uploadButton = new Upload(multiFileBuffer);
             Button buttonLoadFile = new Button("\uD83D\uDCCE");
 
             buttonLoadFile.setWidth("75px");
@@ -490,26 +572,14 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
 
             uploadButton.addSucceededListener(event -> {
                 String fileName = event.getFileName();
-                filesData.add(Pair.of(fileName, multiFileMemoryBuffer.getInputStream(fileName)));
+                File file = multiFileBuffer.getFileData(fileName).getFile();
+                uploadFiles.add(file.toPath());
+                filesData.add(Pair.of(fileName, file));
             });
 
             return uploadButton;
         }
 
-        private byte[] readBytesFromInputStream(InputStream inputStream) throws IOException {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-            int bytesRead;
-            byte[] data = new byte[1024];
-
-            while ((bytesRead = inputStream.read(data, 0, data.length)) > 0) {
-                buffer.write(data, 0, bytesRead);
-            }
-
-            buffer.flush();
-
-            return buffer.toByteArray();
-        }
 
 
         private VerticalLayout getMessagesLayout() {
@@ -542,112 +612,161 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
     }
 
     public class Backend {
-        private static final String bootstrapServer = "localhost:9093";
-        private static final String autoOffsetReset = "earliest";
-        private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
         private static final Random RANDOM = new Random();
-        private volatile SymmetricEncryption symmetricEncryptionDecrypt;
-        private volatile boolean isRunning = true;
+        private volatile MessageCipher symmetricEncryptionDecrypt;
+        private volatile KafkaReader.Subscription subscription;
+        private CipherInfoMessage cipherInfoThisClient;
         private CipherInfoMessage cipherInfoAnotherClient;
         private byte[] privateKey;
         private byte[] publicKeyAnother;
         private byte[] p;
+        // создаётся при первой части вложения и не создаётся после close: обработчик записей и закрытие окна
+        // идут в разных потоках, поэтому под receiverLock
+        private final Object receiverLock = new Object();
+        private FileTransferReceiver fileTransferReceiver;
+        private boolean closed;
+
+        // обработчик выбирается по заголовку записи, тело читается только выбранным обработчиком
+        private final RecordDispatcher dispatcher = new RecordDispatcher()
+                .register(RecordType.CIPHER_INFO, this::handleCipherInfo)
+                .register(RecordType.KEY_INFO, this::handleKeyInfo)
+                .register(RecordType.DELETE_MESSAGE, this::handleDeleteMessage)
+                .register(RecordType.DISCONNECT, this::handleDisconnect)
+                .register(RecordType.DATA, this::handleData)
+                .register(RecordType.FILE_CHUNK, this::handleFileChunk)
+                .register(RecordType.CHUNK_ACK, this::handleChunkAck);
 
         public void startKafka() {
-            CipherInfoMessage cipherInfoThisClient = server.getCipherInfoMessageClient(clientId, roomId);
-
-            KafkaConsumer<byte[], byte[]> kafkaConsumer = new KafkaConsumer<>(
-                    Map.of(
-                            ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServer,
-                            ConsumerConfig.GROUP_ID_CONFIG, "group_" + clientId + "_" + roomId,
-                            ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset
-                    ),
-                    new ByteArrayDeserializer(),
-                    new ByteArrayDeserializer()
-            );
-            kafkaConsumer.subscribe(Collections.singletonList("input_" + clientId + "_" + roomId));
-
-            try {
-                while (isRunning) {
-                    ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(Duration.ofMillis(1000));
-
-                    for (ConsumerRecord<byte[], byte[]> consumerRecord : consumerRecords) {
-                        String jsonMessage = new String(consumerRecord.value());
-
-                        if (jsonMessage.contains("cipher_info")) {
-                            cipherInfoAnotherClient = OBJECT_MAPPER.readValue(jsonMessage, CipherInfoMessage.class);
-
-                            outputTopic = "input_" + cipherInfoAnotherClient.getAnotherClientId() + "_" + roomId;
-                            privateKey = generatePrivateKey();
-                            p = cipherInfoAnotherClient.getP();
-                            anotherClientId = cipherInfoAnotherClient.getAnotherClientId();
-                            byte[] publicKey = generatePublicKey(privateKey, p, cipherInfoAnotherClient.getG());
-
-                            log.info("Client {} get cipher info", clientId);
-                            log.info(cipherInfoAnotherClient.toString());
-
-                            kafkaWriter.processing(new KeyMessage("key_info", publicKey).toBytes(), outputTopic);
-
-                            if (publicKeyAnother != null) {
-                                cipherInfoAnotherClient.setPublicKey(publicKeyAnother);
-                                symmetricEncryptionDecrypt = CipherInfoMessageParser.getCipher(cipherInfoAnotherClient, new BigInteger(privateKey), new BigInteger(p));
-
-                                cipherInfoThisClient.setPublicKey(publicKeyAnother);
-                                symmetricEncryptionEncrypt = CipherInfoMessageParser.getCipher(cipherInfoThisClient, new BigInteger(privateKey), new BigInteger(p));
-                            }
-                        } else if (jsonMessage.contains("key_info")) {
-                            log.info("Client {} get key info", clientId);
-
-                            KeyMessage keyMessage = OBJECT_MAPPER.readValue(jsonMessage, KeyMessage.class);
-
-                            if (cipherInfoAnotherClient != null) {
-                                cipherInfoAnotherClient.setPublicKey(keyMessage.getPublicKey());
-                                symmetricEncryptionDecrypt = CipherInfoMessageParser.getCipher(cipherInfoAnotherClient, new BigInteger(privateKey), new BigInteger(p));
-
-                                cipherInfoThisClient.setPublicKey(keyMessage.getPublicKey());
-                                symmetricEncryptionEncrypt = CipherInfoMessageParser.getCipher(cipherInfoThisClient, new BigInteger(privateKey), new BigInteger(p));
-                            } else {
-                                publicKeyAnother = keyMessage.getPublicKey();
-                            }
-                        } else if (jsonMessage.contains("delete_message")) {
-                            log.info("get disconnect message");
-                            Message deleteMessage = OBJECT_MAPPER.readValue(jsonMessage, Message.class);
-                            messagesLayoutWrapper.deleteMessage(deleteMessage.getIndexMessage());
-                        } else if (jsonMessage.contains("disconnect")) {
-                            symmetricEncryptionDecrypt = null;
-                            symmetricEncryptionEncrypt = null;
-                            messagesLayoutWrapper.clearMessages();
-                        } else {
-                            Message message = MessageParser.parseMessage(new String(symmetricEncryptionDecrypt.decrypt(consumerRecord.value())));
+            cipherInfoThisClient = server.getCipherInfoMessageClient(clientId, roomId);
+            subscription = kafkaReader.subscribe("input_" + clientId + "_" + roomId, "group_" + clientId + "_" + roomId, dispatcher);
+        }
 
-                            if (message != null && message.getBytes() != null) {
-                                log.info("Client {} get message", clientId);
+        // обработчики вызываются из пула KafkaReader, записи одной комнаты - по очереди
+        private void handleCipherInfo(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception {
+            cipherInfoAnotherClient = MessageCodec.decodeCipherInfoMessage(consumerRecord.value());
 
-                                server.saveMessage(anotherClientId, clientId, message);
+            outputTopic = "input_" + cipherInfoAnotherClient.getAnotherClientId() + "_" + roomId;
+            privateKey = generatePrivateKey();
+            p = cipherInfoAnotherClient.getP();
+            anotherClientId = cipherInfoAnotherClient.getAnotherClientId();
+            byte[] publicKey = generatePublicKey(privateKey, p, cipherInfoAnotherClient.getG());
 
-                                if (message.getTypeFormat().equals("text")) {
-                                    messagesLayoutWrapper.showTextMessage(new String(message.getBytes()), MessagesLayoutWrapper.Destination.ANOTHER);
-                                } else if (message.getTypeFormat().equals("image")) {
-                                    messagesLayoutWrapper.showImageMessage(message.getFileName(), message.getBytes(), MessagesLayoutWrapper.Destination.ANOTHER);
-                                } else {
-                                    messagesLayoutWrapper.showFileMessage(message.getFileName(), message.getBytes(), MessagesLayoutWrapper.Destination.ANOTHER);
-                                }
-                            }
-                        }
-                    }
+            log.info("Client {} get cipher info", clientId);
+            log.info(cipherInfoAnotherClient.toString());
+
+            kafkaWriter.processing(new KeyMessage("key_info", publicKey).toBytes(), outputTopic, RecordType.KEY_INFO);
+
+            if (publicKeyAnother != null) {
+                cipherInfoAnotherClient.setPublicKey(publicKeyAnother);
+                symmetricEncryptionDecrypt = CipherInfoMessageParser.getCipher(cipherInfoAnotherClient, new BigInteger(privateKey), new BigInteger(p), cryptoExecutor);
+
+                cipherInfoThisClient.setPublicKey(publicKeyAnother);
+                symmetricEncryptionEncrypt = CipherInfoMessageParser.getCipher(cipherInfoThisClient, new BigInteger(privateKey), new BigInteger(p), cryptoExecutor);
+                fileTransferSender.resume(symmetricEncryptionEncrypt, outputTopic);
+            }
+        }
+
+        private void handleKeyInfo(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception {
+            log.info("Client {} get key info", clientId);
+
+            KeyMessage keyMessage = MessageCodec.decodeKeyMessage(consumerRecord.value());
+
+            if (cipherInfoAnotherClient != null) {
+                cipherInfoAnotherClient.setPublicKey(keyMessage.getPublicKey());
+                symmetricEncryptionDecrypt = CipherInfoMessageParser.getCipher(cipherInfoAnotherClient, new BigInteger(privateKey), new BigInteger(p), cryptoExecutor);
+
+                cipherInfoThisClient.setPublicKey(keyMessage.getPublicKey());
+                symmetricEncryptionEncrypt = CipherInfoMessageParser.getCipher(cipherInfoThisClient, new BigInteger(privateKey), new BigInteger(p), cryptoExecutor);
+                fileTransferSender.resume(symmetricEncryptionEncrypt, outputTopic);
+            } else {
+                publicKeyAnother = keyMessage.getPublicKey();
+            }
+        }
+
+        private void handleDeleteMessage(ConsumerRecord<byte[], byte[]> consumerRecord) {
+            log.info("get disconnect message");
+            Message deleteMessage = MessageCodec.decodeMessage(consumerRecord.value());
+            messagesLayoutWrapper.deleteMessage(deleteMessage.getIndexMessage());
+        }
+
+        private void handleDisconnect(ConsumerRecord<byte[], byte[]> consumerRecord) {
+            symmetricEncryptionDecrypt = null;
+            symmetricEncryptionEncrypt = null;
+            fileTransferSender.pause();
+            messagesLayoutWrapper.clearMessages();
+        }
+
+        private void handleData(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception {
+            MessageCipher cipher = symmetricEncryptionDecrypt;
+            if (cipher == null) {
+                log.warn("Client {} get message before key exchange", clientId);
+                return;
+            }
+
+            Message message = MessageCodec.decodeMessage(cipher.decrypt(consumerRecord.value()));
+
+            if (message.getBytes() != null) {
+                log.info("Client {} get message", clientId);
+
+                server.saveMessage(anotherClientId, clientId, message);
+
+                if (message.getTypeFormat().equals("text")) {
+                    messagesLayoutWrapper.showTextMessage(new String(message.getBytes()), MessagesLayoutWrapper.Destination.ANOTHER);
+                } else if (message.getTypeFormat().equals("image")) {
+                    messagesLayoutWrapper.showImageMessage(message.getFileName(), message.getBytes(), MessagesLayoutWrapper.Destination.ANOTHER);
+                } else {
+                    messagesLayoutWrapper.showFileMessage(message.getFileName(), message.getBytes(), MessagesLayoutWrapper.Destination.ANOTHER);
                 }
-            } catch (InterruptedException ex) {
-                log.error(ex.getMessage());
-                log.error(Arrays.deepToString(ex.getStackTrace()));
-                Thread.currentThread().interrupt();
-            } catch (Exception ex) {
-                log.error(ex.getMessage());
-                log.error(Arrays.deepToString(ex.getStackTrace()));
+            }
+        }
+
+        // часть вложения пишется сразу в файл, готовый файл показывается по ссылке на него
+        private void handleFileChunk(ConsumerRecord<byte[], byte[]> consumerRecord) throws Exception {
+            MessageCipher cipher = symmetricEncryptionDecrypt;
+            if (cipher == null) {
+                log.warn("Client {} get file chunk before key exchange", clientId);
+                return;
             }
 
-            kafkaConsumer.close();
+            FileChunkMessage chunk = MessageCodec.decodeFileChunkMessage(cipher.decrypt(consumerRecord.value()));
+            FileTransferReceiver receiver = getFileTransferReceiver();
+            if (receiver == null) {
+                return;
+            }
+
+            // после close приёмник вернёт пустой результат
+            FileTransferReceiver.Result result = receiver.accept(chunk);
+            if (result.ack() != null) {
+                kafkaWriter.processing(result.ack().toBytes(), outputTopic, RecordType.CHUNK_ACK);
+            }
 
-            log.info("End kafka reader client {}", clientId);
+            if (result.completedFile() != null) {
+                log.info("Client {} get file {}", clientId, chunk.getFileName());
+
+                server.saveMessage(anotherClientId, clientId, new Message("message", chunk.getTypeFormat(), chunk.getFileName(), 0, null));
+
+                if (chunk.getTypeFormat().equals("image")) {
+                    messagesLayoutWrapper.showImageMessage(chunk.getFileName(), result.completedFile(), MessagesLayoutWrapper.Destination.ANOTHER);
+                } else {
+                    messagesLayoutWrapper.showFileMessage(chunk.getFileName(), result.completedFile(), MessagesLayoutWrapper.Destination.ANOTHER);
+                }
+            }
+        }
+
+        private FileTransferReceiver getFileTransferReceiver() throws IOException {
+            synchronized (receiverLock) {
+                if (closed) {
+                    return null;
+                }
+                if (fileTransferReceiver == null) {
+                    fileTransferReceiver = new FileTransferReceiver(Path.of(System.getProperty("java.io.tmpdir"), "chat-transfers"), clientId + "_" + roomId);
+                }
+                return fileTransferReceiver;
+            }
+        }
+
+        private void handleChunkAck(ConsumerRecord<byte[], byte[]> consumerRecord) {
+            fileTransferSender.onAck(MessageCodec.decodeFileChunkMessage(consumerRecord.value()));
         }
 
         private byte[] generatePrivateKey() {
@@ -662,7 +781,22 @@ public class RoomView extends VerticalLayout implements HasUrlParameter<String>
         }
 
         public void close() {
-            isRunning = false;
+            KafkaReader.Subscription current = subscription;
+            if (current != null) {
+                current.close();
+            }
+
+            fileTransferSender.close();
+            // недособранные вложения остаются в .part до следующего входа в комнату, собранные файлы удаляются.
+            // Подписка не ждёт пачку, которая сейчас обрабатывается: close приёмника дожидается её записи
+            FileTransferReceiver receiver;
+            synchronized (receiverLock) {
+                closed = true;
+                receiver = fileTransferReceiver;
+            }
+            if (receiver != null) {
+                receiver.close();
+            }
         }
     }
 }
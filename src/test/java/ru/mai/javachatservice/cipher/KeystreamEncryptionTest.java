@@ -0,0 +1,95 @@
+package ru.mai.javachatservice.cipher;
+
+import org.junit.jupiter.api.Test;
+import ru.mai.javachatservice.model.messages.CipherInfoMessage;
+import ru.mai.javachatservice.model.messages.json_parser.CipherInfoMessageParser;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeystreamEncryptionTest {
+    private static final String[] MODES = {"CTR", "OFB"};
+    private static final BigInteger PRIME = BigInteger.probablePrime(512, new Random(17));
+
+    // обе стороны комнаты получают шифр из CipherInfo, как окно комнаты
+    @Test
+    void roomCipherRestoresChatLines() throws Exception {
+        for (String mode : MODES) {
+            MessageCipher sender = roomCipher(mode);
+            MessageCipher receiver = roomCipher(mode);
+            assertInstanceOf(KeystreamEncryption.class, sender, mode);
+
+            for (int i = 0; i < 100; i++) {
+                byte[] text = ("message " + i).getBytes(StandardCharsets.UTF_8);
+                assertArrayEquals(text, receiver.decrypt(sender.encrypt(text)), mode);
+            }
+        }
+    }
+
+    // части вложений приходят не в порядке шифрования, вперемешку со строками чата
+    @Test
+    void unorderedMessagesDecryptInAnyOrder() throws Exception {
+        Random random = new Random(17);
+
+        for (String mode : MODES) {
+            MessageCipher sender = roomCipher(mode);
+            MessageCipher receiver = roomCipher(mode);
+
+            List<byte[]> texts = new ArrayList<>();
+            List<byte[]> chunks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                byte[] text = new byte[1000 + random.nextInt(50_000)];
+                random.nextBytes(text);
+                texts.add(text);
+                chunks.add(sender.encryptUnordered(text));
+            }
+
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < texts.size(); i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, random);
+
+            for (int i : order) {
+                byte[] line = ("line " + i).getBytes(StandardCharsets.UTF_8);
+                assertArrayEquals(line, receiver.decrypt(sender.encrypt(line)), mode);
+                assertArrayEquals(texts.get(i), receiver.decrypt(chunks.get(i)), mode);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedMessage() throws Exception {
+        MessageCipher sender = roomCipher("CTR");
+        MessageCipher receiver = roomCipher("CTR");
+
+        assertThrows(IllegalArgumentException.class, () -> receiver.decrypt(new byte[16]));
+
+        byte[] message = sender.encrypt("text".getBytes(StandardCharsets.UTF_8));
+        message[0] = 7;
+        assertThrows(IllegalArgumentException.class, () -> receiver.decrypt(message));
+    }
+
+    private static MessageCipher roomCipher(String mode) {
+        CipherInfoMessage cipherInfo = CipherInfoMessage.builder()
+                .typeMessage("cipher_info")
+                .nameAlgorithm("RC6")
+                .namePadding("PKCS7")
+                .encryptionMode(mode)
+                .sizeKeyInBits(128)
+                .sizeBlockInBits(128)
+                .initializationVector(new byte[16])
+                .publicKey(BigInteger.valueOf(3).modPow(BigInteger.valueOf(1_000_003), PRIME).toByteArray())
+                .build();
+
+        return CipherInfoMessageParser.getCipher(cipherInfo, BigInteger.valueOf(65_537), PRIME);
+    }
+}
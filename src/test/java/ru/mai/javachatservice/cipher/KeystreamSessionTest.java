@@ -0,0 +1,99 @@
+package ru.mai.javachatservice.cipher;
+
+import org.junit.jupiter.api.Test;
+import ru.mai.javachatservice.cipher.cipher_impl.RC6;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeystreamSessionTest {
+    private static final SymmetricEncryption.EncryptionModes[] MODES = {
+            SymmetricEncryption.EncryptionModes.CTR, SymmetricEncryption.EncryptionModes.OFB
+    };
+
+    @Test
+    void decryptSessionRestoresText() throws Exception {
+        for (SymmetricEncryption.EncryptionModes mode : MODES) {
+            try (SymmetricEncryption symmetricEncryption = newEncryption(mode);
+                 KeystreamSession sender = symmetricEncryption.openEncryptSession();
+                 KeystreamSession receiver = symmetricEncryption.openDecryptSession()) {
+                for (int i = 0; i < 100; i++) {
+                    byte[] text = ("message " + i).getBytes(StandardCharsets.UTF_8);
+                    assertArrayEquals(text, receiver.decrypt(sender.encrypt(text)), mode.name());
+                }
+            }
+        }
+    }
+
+    // ключевой поток - шифртекст нулевого текста: у сессий и encrypt(byte[]) он не должен совпадать
+    @Test
+    void sessionsDoNotReuseKeystream() throws Exception {
+        byte[] zeros = new byte[64];
+
+        for (SymmetricEncryption.EncryptionModes mode : MODES) {
+            try (SymmetricEncryption symmetricEncryption = newEncryption(mode);
+                 KeystreamSession first = symmetricEncryption.openEncryptSession();
+                 KeystreamSession second = symmetricEncryption.openEncryptSession()) {
+                assertNotEquals(first.getNonce(), second.getNonce());
+
+                byte[] plain = Arrays.copyOf(symmetricEncryption.encrypt(zeros), zeros.length);
+                byte[] firstStream = Arrays.copyOf(first.encrypt(zeros).cipherText(), zeros.length);
+                byte[] secondStream = Arrays.copyOf(second.encrypt(zeros).cipherText(), zeros.length);
+
+                assertFalse(Arrays.equals(plain, firstStream), mode.name());
+                assertFalse(Arrays.equals(plain, secondStream), mode.name());
+                assertFalse(Arrays.equals(firstStream, secondStream), mode.name());
+            }
+        }
+    }
+
+    @Test
+    void receiverFollowsReconnectedSender() throws Exception {
+        try (SymmetricEncryption symmetricEncryption = newEncryption(SymmetricEncryption.EncryptionModes.CTR);
+             KeystreamSession receiver = symmetricEncryption.openDecryptSession()) {
+            KeystreamSession before = symmetricEncryption.openEncryptSession();
+            byte[] firstText = "before reconnect".getBytes(StandardCharsets.UTF_8);
+            byte[] lateText = "late".getBytes(StandardCharsets.UTF_8);
+            KeystreamSession.Segment first = before.encrypt(firstText);
+            KeystreamSession.Segment late = before.encrypt(lateText);
+            before.close();
+            assertArrayEquals(firstText, receiver.decrypt(first));
+
+            try (KeystreamSession after = symmetricEncryption.openEncryptSession()) {
+                byte[] text = "after reconnect".getBytes(StandardCharsets.UTF_8);
+                assertArrayEquals(text, receiver.decrypt(after.encrypt(text)));
+                // сегмент прежней сессии отправителя пришёл после новой
+                assertArrayEquals(lateText, receiver.decrypt(late));
+                assertArrayEquals(text, receiver.decrypt(after.encrypt(text)));
+            }
+        }
+    }
+
+    @Test
+    void sessionWorksInOneDirection() throws Exception {
+        try (SymmetricEncryption symmetricEncryption = newEncryption(SymmetricEncryption.EncryptionModes.CTR);
+             KeystreamSession sender = symmetricEncryption.openEncryptSession();
+             KeystreamSession receiver = symmetricEncryption.openDecryptSession()) {
+            KeystreamSession.Segment segment = sender.encrypt(new byte[1]);
+
+            assertThrows(IllegalStateException.class, () -> receiver.encrypt(new byte[1]));
+            assertThrows(IllegalStateException.class, () -> sender.decrypt(segment));
+        }
+    }
+
+    private static SymmetricEncryption newEncryption(SymmetricEncryption.EncryptionModes mode) {
+        Random random = new Random(17);
+        byte[] key = new byte[16];
+        byte[] initializationVector = new byte[16];
+        random.nextBytes(key);
+        random.nextBytes(initializationVector);
+
+        return new SymmetricEncryption(mode, SymmetricEncryption.PaddingMode.PKCS7, new RC6(key), initializationVector);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.mai.javachatservice.cipher.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mai.javachatservice.cipher.cipher_impl.RC6;
+import ru.mai.javachatservice.cipher.cipher_impl.Serpent;
+import ru.mai.javachatservice.cipher.cipher_impl.SerpentBitslice;
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ru.mai.javachatservice.cipher.utils.BinaryOperations.byteToIntArray;
+
+// Один блок (задержка) и пачка блоков без режима (пропускная способность) для каждого алгоритма.
+// SERPENT - SerpentBitslice, который использует чат, SERPENT_REFERENCE - табличный Serpent.
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockCipherBenchmark {
+    private static final int BULK_SIZE = 16 * 1024;
+
+    @Param({"RC6", "SERPENT", "SERPENT_REFERENCE"})
+    public String algorithm;
+
+    private CipherAlgorithms cipher;
+    private byte[] block;
+    private byte[] blockOut;
+    private byte[] bulk;
+    private byte[] bulkOut;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+
+        cipher = switch (algorithm) {
+            case "RC6" -> new RC6(key);
+            case "SERPENT" -> new SerpentBitslice(128, byteToIntArray(key));
+            case "SERPENT_REFERENCE" -> new Serpent(128, byteToIntArray(key));
+            default -> throw new IllegalStateException("Unexpected value: " + algorithm);
+        };
+
+        block = new byte[cipher.getBlockSize()];
+        blockOut = new byte[cipher.getBlockSize()];
+        bulk = new byte[BULK_SIZE];
+        bulkOut = new byte[BULK_SIZE];
+        random.nextBytes(block);
+        random.nextBytes(bulk);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] encryptBlock() {
+        cipher.encryptBlock(block, 0, blockOut, 0);
+        return blockOut;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] decryptBlock() {
+        cipher.decryptBlock(block, 0, blockOut, 0);
+        return blockOut;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] encryptBlockAllocating() {
+        return cipher.encryptBlock(block);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] encryptBlocks16K() {
+        cipher.encryptBlocks(bulk, 0, bulkOut, 0, BULK_SIZE / cipher.getBlockSize());
+        return bulkOut;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] decryptBlocks16K() {
+        cipher.decryptBlocks(bulk, 0, bulkOut, 0, BULK_SIZE / cipher.getBlockSize());
+        return bulkOut;
+    }
+}
@@ -0,0 +1,24 @@
+package ru.mai.javachatservice.cipher.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Запуск всех бенчмарков пакета с GC-профайлером: кроме ops/s и ns/op печатается gc.alloc.rate.norm -
+// байт, выделенных на одну операцию.
+// Аргументы командной строки - обычные опции JMH, например "-p size=64 -p mode=CBC" или "-rf json -rff baseline.json".
+public class CipherBenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .include(CipherBenchmarkRunner.class.getPackageName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,92 @@
+package ru.mai.javachatservice.cipher.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mai.javachatservice.cipher.SymmetricEncryption;
+import ru.mai.javachatservice.cipher.cipher_impl.RC6;
+import ru.mai.javachatservice.cipher.cipher_impl.SerpentBitslice;
+import ru.mai.javachatservice.cipher.cipher_interface.CipherAlgorithms;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static ru.mai.javachatservice.cipher.utils.BinaryOperations.byteToIntArray;
+
+// Полный путь SymmetricEncryption (паддинг + режим + алгоритм) для всех режимов.
+// Размеры: строка чата, 16 КБ и одна часть вложения (FileTransferSender.CHUNK_SIZE, 256 КБ).
+// По умолчанию только PKCS7 (паддинг на скорость почти не влияет), остальные - через "-p padding=ZEROS,ANSI_X923,ISO_10126".
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymmetricEncryptionBenchmark {
+    @Param({"RC6", "SERPENT"})
+    public String algorithm;
+
+    @Param({"ECB", "CBC", "PCBC", "CFB", "OFB", "CTR", "RANDOM_DELTA"})
+    public SymmetricEncryption.EncryptionModes mode;
+
+    @Param({"PKCS7"})
+    public SymmetricEncryption.PaddingMode padding;
+
+    @Param({"64", "16384", "262144"})
+    public int size;
+
+    @Param({"SCALAR", "LANES"})
+    public SymmetricEncryption.EncryptionEngine engine;
+
+    private SymmetricEncryption symmetricEncryption;
+    private byte[] plainText;
+    private byte[] cipherText;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+
+        // IV как в Authorization.getCipherInfo: байты 0..127
+        byte[] initializationVector = new byte[16];
+        for (int i = 0; i < initializationVector.length; i++) {
+            initializationVector[i] = (byte) random.nextInt(128);
+        }
+
+        CipherAlgorithms cipher = switch (algorithm) {
+            case "RC6" -> new RC6(key);
+            case "SERPENT" -> new SerpentBitslice(128, byteToIntArray(key));
+            default -> throw new IllegalStateException("Unexpected value: " + algorithm);
+        };
+
+        symmetricEncryption = new SymmetricEncryption(mode, padding, cipher, initializationVector, engine);
+        plainText = new byte[size];
+        random.nextBytes(plainText);
+        cipherText = symmetricEncryption.encrypt(plainText);
+    }
+
+    @TearDown
+    public void tearDown() {
+        symmetricEncryption.close();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return symmetricEncryption.encrypt(plainText);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return symmetricEncryption.decrypt(cipherText);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import org.junit.jupiter.api.Test;
+import ru.mai.javachatservice.cipher.ChaCha20Poly1305Encryption;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChaCha20Poly1305Test {
+    private static final byte[] SUNSCREEN = ("Ladies and Gentlemen of the class of '99: If I could offer you only one tip "
+            + "for the future, sunscreen would be it.").getBytes(StandardCharsets.US_ASCII);
+    // последний размер больше MAX_THRESHOLD_BYTES BlockParallelism - шифруется кусками в пуле
+    private static final int[] LENGTHS = {0, 1, 15, 16, 63, 64, 65, 127, 1000, 4096, 300_000};
+
+    // RFC 8439 2.4.2: шифрование ChaCha20 со счётчиком 1 - тот же поток, что у AEAD
+    @Test
+    void matchesRfcChaCha20Vector() {
+        byte[] key = range(0x00, 32);
+        byte[] nonce = HexFormat.of().parseHex("000000000000004a00000000");
+        byte[] expected = HexFormat.of().parseHex(
+                "6e2e359a2568f98041ba0728dd0d6981e97e7aec1d4360c20a27afccfd9fae0b"
+                        + "f91b65c5524733ab8f593dabcd62b3571639d624e65152ab8f530c359f0861d8"
+                        + "07ca0dbf500d6a6156a38e088a22b65e52bc514d16ccf806818ce91ab7793736"
+                        + "5af90bbf74a35be6b40b8eedf2785e42874d");
+
+        byte[] sealed = new ChaCha20Poly1305(key, CryptoExecutor.getShared()).encrypt(nonce, SUNSCREEN);
+
+        assertArrayEquals(expected, Arrays.copyOf(sealed, SUNSCREEN.length));
+    }
+
+    // RFC 8439 2.8.2: шифртекст не зависит от дополнительных данных, тег в векторе посчитан с ними - его проверяет сверка с JDK
+    @Test
+    void matchesRfcAeadCipherText() {
+        byte[] key = range(0x80, 32);
+        byte[] nonce = HexFormat.of().parseHex("070000004041424344454647");
+        byte[] expected = HexFormat.of().parseHex(
+                "d31a8d34648e60db7b86afbc53ef7ec2a4aded51296e08fea9e2b5a736ee62d6"
+                        + "3dbea45e8ca9671282fafb69da92728b1a71de0a9e060b2905d6a5b67ecd3b36"
+                        + "92ddbd7f2d778b8c9803aee328091b58fab324e4fad675945585808b4831d7bc"
+                        + "3ff4def08e4b7a9de576d26586cec64b6116");
+
+        byte[] sealed = new ChaCha20Poly1305(key, CryptoExecutor.getShared()).encrypt(nonce, SUNSCREEN);
+
+        assertArrayEquals(expected, Arrays.copyOf(sealed, SUNSCREEN.length));
+    }
+
+    // шифртекст и тег байт в байт как у ChaCha20-Poly1305 из JDK без дополнительных данных
+    @Test
+    void matchesJdkCipher() throws Exception {
+        Random random = new Random(20);
+        byte[] key = new byte[ChaCha20Poly1305.KEY_SIZE];
+        random.nextBytes(key);
+
+        try (CryptoExecutor executor = new CryptoExecutor(4)) {
+            ChaCha20Poly1305 cipher = new ChaCha20Poly1305(key, executor);
+
+            for (int length : LENGTHS) {
+                byte[] nonce = new byte[ChaCha20Poly1305.NONCE_SIZE];
+                byte[] text = new byte[length];
+                random.nextBytes(nonce);
+                random.nextBytes(text);
+
+                Cipher jdk = Cipher.getInstance("ChaCha20-Poly1305");
+                jdk.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "ChaCha20"), new IvParameterSpec(nonce));
+                byte[] expected = jdk.doFinal(text);
+
+                byte[] sealed = cipher.encrypt(nonce, text);
+                assertArrayEquals(expected, sealed, "length " + length);
+                assertArrayEquals(text, cipher.decrypt(nonce, expected), "length " + length);
+            }
+        }
+    }
+
+    // изменённый бит шифртекста или тега, чужой nonce, обрезанное сообщение - отказ без расшифрования
+    @Test
+    void rejectsForgery() {
+        byte[] key = range(0x80, 32);
+        byte[] nonce = HexFormat.of().parseHex("070000004041424344454647");
+        ChaCha20Poly1305 cipher = new ChaCha20Poly1305(key, CryptoExecutor.getShared());
+        byte[] sealed = cipher.encrypt(nonce, SUNSCREEN);
+
+        byte[] cipherText = sealed.clone();
+        cipherText[5] ^= 0x01;
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(nonce, cipherText));
+
+        byte[] tag = sealed.clone();
+        tag[tag.length - 1] ^= (byte) 0x80;
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(nonce, tag));
+
+        byte[] otherNonce = nonce.clone();
+        otherNonce[0] ^= 0x01;
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(otherNonce, sealed));
+
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(nonce, Arrays.copyOf(sealed, sealed.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> cipher.decrypt(nonce, new byte[ChaCha20Poly1305.TAG_SIZE - 1]));
+    }
+
+    @Test
+    void messageCipherRestoresTextAndRejectsForgery() {
+        ChaCha20Poly1305Encryption encryption = new ChaCha20Poly1305Encryption(new ChaCha20Poly1305(range(0x00, 32), CryptoExecutor.getShared()));
+
+        byte[] message = encryption.encrypt(SUNSCREEN);
+        assertArrayEquals(SUNSCREEN, encryption.decrypt(message));
+
+        byte[] forged = message.clone();
+        forged[ChaCha20Poly1305.NONCE_SIZE] ^= 0x01;
+        assertThrows(IllegalArgumentException.class, () -> encryption.decrypt(forged));
+        assertThrows(IllegalArgumentException.class, () -> encryption.decrypt(new byte[ChaCha20Poly1305.NONCE_SIZE]));
+    }
+
+    private static byte[] range(int first, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = (byte) (first + i);
+        }
+        return result;
+    }
+}
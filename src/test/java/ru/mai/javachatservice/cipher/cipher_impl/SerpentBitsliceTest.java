@@ -0,0 +1,123 @@
+package ru.mai.javachatservice.cipher.cipher_impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static ru.mai.javachatservice.cipher.utils.BinaryOperations.byteToIntArray;
+
+// SerpentBitslice и SerpentLanes заменяют Serpent в комнатах, поэтому шифротекст должен совпадать
+// со скалярным Serpent бит в бит: иначе старые сообщения перестанут расшифровываться
+class SerpentBitsliceTest {
+    private static final int[] KEY_SIZES = {128, 192, 256};
+    private static final int BLOCK_SIZE = 16;
+    // больше одной пачки полос и не кратно ей, чтобы прошли и полосы, и скалярный хвост
+    private static final int BLOCKS = 2 * SerpentLanes.LANES + 7;
+
+    @Test
+    void singleBlockMatchesSerpent() {
+        Random random = new Random(1);
+
+        for (int keySize : KEY_SIZES) {
+            for (int i = 0; i < 100; i++) {
+                int[] key = randomKey(random, keySize);
+                Serpent serpent = new Serpent(keySize, key);
+                SerpentBitslice bitslice = new SerpentBitslice(keySize, key);
+
+                byte[] block = randomBytes(random, BLOCK_SIZE);
+                byte[] expected = serpent.encryptBlock(block.clone());
+
+                assertArrayEquals(expected, bitslice.encryptBlock(block.clone()), "encrypt, key " + keySize);
+                assertArrayEquals(block, bitslice.decryptBlock(expected.clone()), "decrypt, key " + keySize);
+                assertArrayEquals(block, serpent.decryptBlock(expected.clone()), "serpent decrypt, key " + keySize);
+            }
+        }
+    }
+
+    @Test
+    void multiBlockMatchesSerpent() {
+        Random random = new Random(2);
+
+        for (int keySize : KEY_SIZES) {
+            int[] key = randomKey(random, keySize);
+            Serpent serpent = new Serpent(keySize, key);
+            SerpentBitslice bitslice = new SerpentBitslice(keySize, key);
+            SerpentLanes lanes = new SerpentLanes(bitslice);
+
+            byte[] plainText = randomBytes(random, BLOCKS * BLOCK_SIZE);
+            byte[] expected = encryptEachBlock(serpent, plainText);
+
+            // со смещением в обоих массивах
+            byte[] bitsliceOut = new byte[plainText.length + 5];
+            bitslice.encryptBlocks(plainText, 0, bitsliceOut, 5, BLOCKS);
+            assertArrayEquals(expected, slice(bitsliceOut, 5, plainText.length), "bitslice encryptBlocks, key " + keySize);
+
+            byte[] lanesOut = plainText.clone();
+            lanes.encryptBlocks(lanesOut, 0, lanesOut, 0, BLOCKS);
+            assertArrayEquals(expected, lanesOut, "lanes encryptBlocks, key " + keySize);
+
+            byte[] decrypted = new byte[plainText.length];
+            bitslice.decryptBlocks(expected, 0, decrypted, 0, BLOCKS);
+            assertArrayEquals(plainText, decrypted, "bitslice decryptBlocks, key " + keySize);
+
+            lanes.decryptBlocks(lanesOut, 0, lanesOut, 0, BLOCKS);
+            assertArrayEquals(plainText, lanesOut, "lanes decryptBlocks, key " + keySize);
+        }
+    }
+
+    @Test
+    void directBufferMatchesSerpent() {
+        Random random = new Random(3);
+
+        for (int keySize : KEY_SIZES) {
+            int[] key = randomKey(random, keySize);
+            Serpent serpent = new Serpent(keySize, key);
+            SerpentBitslice bitslice = new SerpentBitslice(keySize, key);
+
+            byte[] plainText = randomBytes(random, BLOCKS * BLOCK_SIZE);
+            byte[] expected = encryptEachBlock(serpent, plainText);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(plainText.length);
+            buffer.put(plainText);
+            bitslice.encryptBlocks(buffer, 0, buffer, 0, BLOCKS);
+            assertArrayEquals(expected, toArray(buffer), "direct encryptBlocks, key " + keySize);
+
+            bitslice.decryptBlocks(buffer, 0, buffer, 0, BLOCKS);
+            assertArrayEquals(plainText, toArray(buffer), "direct decryptBlocks, key " + keySize);
+        }
+    }
+
+    private static byte[] encryptEachBlock(Serpent serpent, byte[] plainText) {
+        byte[] result = new byte[plainText.length];
+        for (int offset = 0; offset < plainText.length; offset += BLOCK_SIZE) {
+            byte[] block = serpent.encryptBlock(slice(plainText, offset, BLOCK_SIZE));
+            System.arraycopy(block, 0, result, offset, BLOCK_SIZE);
+        }
+
+        return result;
+    }
+
+    private static int[] randomKey(Random random, int keySize) {
+        return byteToIntArray(randomBytes(random, keySize / 8));
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] slice(byte[] array, int offset, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(array, offset, result, 0, length);
+        return result;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.capacity()];
+        buffer.duplicate().clear().get(result);
+        return result;
+    }
+}
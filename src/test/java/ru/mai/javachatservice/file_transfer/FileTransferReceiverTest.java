@@ -0,0 +1,77 @@
+package ru.mai.javachatservice.file_transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTransferReceiverTest {
+    private static final String SESSION = "input_1_1";
+
+    @TempDir
+    Path root;
+
+    // собранный файл живёт, пока открыто окно комнаты, недособранный .part остаётся для продолжения
+    @Test
+    void closeDeletesCompletedFilesAndKeepsParts() throws Exception {
+        Path completedFile;
+        try (FileTransferReceiver receiver = new FileTransferReceiver(root, SESSION)) {
+            completedFile = receiver.accept(chunk("done", 0, 1)).completedFile();
+            assertNotNull(completedFile);
+            receiver.accept(chunk("partial", 0, 2));
+            assertTrue(Files.exists(completedFile));
+        }
+
+        assertFalse(Files.exists(completedFile));
+        assertTrue(Files.exists(root.resolve(SESSION).resolve("partial.part")));
+    }
+
+    // запись, пришедшая после закрытия окна, не открывает новый .part
+    @Test
+    void ignoresChunksAfterClose() throws Exception {
+        FileTransferReceiver receiver = new FileTransferReceiver(root, SESSION);
+        receiver.close();
+
+        FileTransferReceiver.Result result = receiver.accept(chunk("late", 0, 2));
+
+        assertNull(result.ack());
+        assertNull(result.completedFile());
+        assertFalse(Files.exists(root.resolve(SESSION).resolve("late.part")));
+    }
+
+    @Test
+    void deletesStaleTransfers() throws Exception {
+        Path abandoned = Files.createDirectories(root.resolve("input_2_1"));
+        Path stalePart = Files.write(abandoned.resolve("old.part"), new byte[16]);
+        Files.setLastModifiedTime(stalePart, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        Path freshPart = Files.write(Files.createDirectories(root.resolve("input_3_1")).resolve("new.part"), new byte[16]);
+
+        new FileTransferReceiver(root, SESSION).close();
+
+        assertFalse(Files.exists(abandoned));
+        assertTrue(Files.exists(freshPart));
+    }
+
+    private static FileChunkMessage chunk(String transferId, int sequence, int totalChunks) {
+        return FileChunkMessage.builder()
+                .typeMessage("file_chunk")
+                .transferId(transferId)
+                .sequence(sequence)
+                .totalChunks(totalChunks)
+                .fileSize((long) totalChunks * FileTransferSender.CHUNK_SIZE)
+                .fileName(transferId + ".bin")
+                .typeFormat("other")
+                .bytes(new byte[FileTransferSender.CHUNK_SIZE])
+                .build();
+    }
+}
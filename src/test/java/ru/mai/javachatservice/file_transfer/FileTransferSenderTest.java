@@ -0,0 +1,159 @@
+package ru.mai.javachatservice.file_transfer;
+
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mai.javachatservice.cipher.MessageCipher;
+import ru.mai.javachatservice.cipher.cipher_thread.CryptoExecutor;
+import ru.mai.javachatservice.kafka.KafkaWriter;
+import ru.mai.javachatservice.kafka.RecordType;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+import ru.mai.javachatservice.model.messages.binary_codec.MessageCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTransferSenderTest {
+    private static final int TOTAL_CHUNKS = 11;
+    private static final int DROPPED_CHUNK = 3;
+    private static final long TIMEOUT_MS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sendsAllChunksInOrder() throws Exception {
+        LoopbackWriter writer = transfer(Set.of(), Set.of());
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < TOTAL_CHUNKS; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, writer.delivered);
+        // ожидание писателя не занимает потоки шифрования
+        assertTrue(writer.sendThreads.stream().noneMatch(name -> name.startsWith("crypto-")), writer.sendThreads.toString());
+    }
+
+    // брокер не принял часть: отправка повторяется с первой неподтверждённой части
+    @Test
+    void resendsAfterFailedSend() throws Exception {
+        LoopbackWriter writer = transfer(Set.of(DROPPED_CHUNK), Set.of());
+
+        assertEquals(1, writer.delivered.stream().filter(sequence -> sequence == DROPPED_CHUNK).count());
+    }
+
+    // часть потерялась без ошибки: получатель видит пропуск и просит отправить заново
+    @Test
+    void resendsLostChunk() throws Exception {
+        LoopbackWriter writer = transfer(Set.of(), Set.of(DROPPED_CHUNK));
+
+        assertEquals(1, writer.resendRequests);
+    }
+
+    private LoopbackWriter transfer(Set<Integer> failOnce, Set<Integer> loseOnce) throws Exception {
+        byte[] content = new byte[(TOTAL_CHUNKS - 1) * FileTransferSender.CHUNK_SIZE + 1000];
+        new Random(25).nextBytes(content);
+        Path source = Files.write(directory.resolve("source.bin"), content);
+
+        try (CryptoExecutor executor = new CryptoExecutor(2);
+             FileTransferReceiver receiver = new FileTransferReceiver(directory.resolve("transfers"), "input_1_1")) {
+            LoopbackWriter writer = new LoopbackWriter(receiver, failOnce, loseOnce);
+            FileTransferSender sender = new FileTransferSender(writer, executor);
+            writer.sender = sender;
+
+            CompletableFuture<Void> completion = sender.send(source, "source.bin", "other", new PlainCipher(), "input_2_1");
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while ((writer.completedFile == null || sender.getActiveTransfers() > 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertNotNull(writer.completedFile);
+            assertEquals(0, sender.getActiveTransfers());
+            // передача завершается только после подтверждения последней части
+            assertTrue(completion.isDone() && !completion.isCompletedExceptionally());
+            assertArrayEquals(content, Files.readAllBytes(writer.completedFile));
+            return writer;
+        }
+    }
+
+    private static final class PlainCipher implements MessageCipher {
+        @Override
+        public byte[] encrypt(byte[] text) {
+            return text;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] text) {
+            return text;
+        }
+    }
+
+    // вместо Kafka: записи сразу идут получателю, подтверждения - обратно отправителю
+    private static final class LoopbackWriter implements KafkaWriter {
+        private final FileTransferReceiver receiver;
+        private final Set<Integer> failOnce;
+        private final Set<Integer> loseOnce;
+        private final List<Integer> delivered = new ArrayList<>();
+        private final Set<String> sendThreads = new HashSet<>();
+        private volatile FileTransferSender sender;
+        private volatile Path completedFile;
+        private int resendRequests;
+
+        private LoopbackWriter(FileTransferReceiver receiver, Set<Integer> failOnce, Set<Integer> loseOnce) {
+            this.receiver = receiver;
+            this.failOnce = new HashSet<>(failOnce);
+            this.loseOnce = new HashSet<>(loseOnce);
+        }
+
+        @Override
+        public void processing(byte[] messageBytes, String outputTopic, RecordType type) {
+            send(messageBytes, outputTopic, type);
+        }
+
+        @Override
+        public synchronized CompletableFuture<RecordMetadata> send(byte[] messageBytes, String outputTopic, RecordType type) {
+            sendThreads.add(Thread.currentThread().getName());
+            FileChunkMessage chunk = MessageCodec.decodeFileChunkMessage(messageBytes);
+            if (failOnce.remove(chunk.getSequence())) {
+                return CompletableFuture.failedFuture(new IOException("Broker is not available"));
+            }
+            if (loseOnce.remove(chunk.getSequence())) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            try {
+                FileTransferReceiver.Result result = receiver.accept(chunk);
+                delivered.add(chunk.getSequence());
+                if (result.completedFile() != null) {
+                    completedFile = result.completedFile();
+                }
+                if (result.ack() != null) {
+                    if (FileTransferReceiver.RESEND_TYPE.equals(result.ack().getTypeMessage())) {
+                        resendRequests++;
+                    }
+                    sender.onAck(result.ack());
+                }
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ru.mai.javachatservice.model.messages.binary_codec;
+
+import org.junit.jupiter.api.Test;
+import ru.mai.javachatservice.model.messages.CipherInfoMessage;
+import ru.mai.javachatservice.model.messages.FileChunkMessage;
+import ru.mai.javachatservice.model.messages.KeyMessage;
+import ru.mai.javachatservice.model.messages.Message;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageCodecTest {
+    private static final Message MESSAGE = Message.builder()
+            .typeMessage("file")
+            .typeFormat("image")
+            .fileName("кот.png")
+            .indexMessage(42)
+            .bytes(new byte[]{1, 2, 3, -1})
+            .build();
+    private static final KeyMessage KEY_MESSAGE = KeyMessage.builder()
+            .typeMessage("key_info")
+            .publicKey(new byte[]{7, 0, 7})
+            .build();
+    private static final CipherInfoMessage CIPHER_INFO_MESSAGE = CipherInfoMessage.builder()
+            .typeMessage("cipher_info")
+            .anotherClientId(Long.MIN_VALUE)
+            .nameAlgorithm("RC6")
+            .namePadding("PKCS7")
+            .encryptionMode("CTR")
+            .sizeKeyInBits(256)
+            .sizeBlockInBits(128)
+            .initializationVector(new byte[16])
+            .publicKey(new byte[]{5})
+            .p(new byte[]{0, -128, 127})
+            .g(new byte[]{2})
+            .build();
+    private static final FileChunkMessage FILE_CHUNK_MESSAGE = FileChunkMessage.builder()
+            .typeMessage("file_chunk")
+            .transferId("transfer")
+            .sequence(3)
+            .totalChunks(10)
+            .fileSize(1L << 40)
+            .fileName("report.pdf")
+            .typeFormat("other")
+            .bytes(new byte[1024])
+            .build();
+
+    @Test
+    void roundTripsAllKinds() {
+        assertEquals(MESSAGE, MessageCodec.decodeMessage(MessageCodec.encode(MESSAGE)));
+        assertEquals(KEY_MESSAGE, MessageCodec.decodeKeyMessage(MessageCodec.encode(KEY_MESSAGE)));
+        assertEquals(CIPHER_INFO_MESSAGE, MessageCodec.decodeCipherInfoMessage(MessageCodec.encode(CIPHER_INFO_MESSAGE)));
+        assertEquals(FILE_CHUNK_MESSAGE, MessageCodec.decodeFileChunkMessage(MessageCodec.encode(FILE_CHUNK_MESSAGE)));
+    }
+
+    // null-поля и пустые массивы различаются после декодирования
+    @Test
+    void roundTripsNullFields() {
+        Message message = Message.builder().bytes(new byte[0]).build();
+        KeyMessage keyMessage = KeyMessage.builder().build();
+        CipherInfoMessage cipherInfoMessage = CipherInfoMessage.builder().build();
+        FileChunkMessage ack = FileChunkMessage.builder().typeMessage("chunk_ack").transferId("transfer").sequence(8).build();
+
+        assertEquals(message, MessageCodec.decodeMessage(MessageCodec.encode(message)));
+        assertEquals(keyMessage, MessageCodec.decodeKeyMessage(MessageCodec.encode(keyMessage)));
+        assertEquals(cipherInfoMessage, MessageCodec.decodeCipherInfoMessage(MessageCodec.encode(cipherInfoMessage)));
+        assertEquals(ack, MessageCodec.decodeFileChunkMessage(MessageCodec.encode(ack)));
+    }
+
+    // запись с position буфера: декодирование сдвигает position ровно на encodedLength
+    @Test
+    void decodesFromBufferPosition() {
+        ByteBuffer buffer = ByteBuffer.allocate(3 + MessageCodec.encodedLength(MESSAGE) + MessageCodec.encodedLength(KEY_MESSAGE));
+        buffer.position(3);
+        MessageCodec.encode(MESSAGE, buffer);
+        MessageCodec.encode(KEY_MESSAGE, buffer);
+        assertEquals(0, buffer.remaining());
+
+        buffer.position(3);
+        assertEquals(MESSAGE, MessageCodec.decodeMessage(buffer));
+        assertEquals(3 + MessageCodec.encodedLength(MESSAGE), buffer.position());
+        assertEquals(KEY_MESSAGE, MessageCodec.decodeKeyMessage(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    // обрезанная на любом байте запись - IllegalArgumentException, а не BufferUnderflowException
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] message = MessageCodec.encode(MESSAGE);
+        byte[] keyMessage = MessageCodec.encode(KEY_MESSAGE);
+        byte[] cipherInfoMessage = MessageCodec.encode(CIPHER_INFO_MESSAGE);
+        byte[] fileChunkMessage = MessageCodec.encode(FILE_CHUNK_MESSAGE);
+
+        for (int length = 0; length < message.length; ++length) {
+            byte[] truncated = Arrays.copyOf(message, length);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeMessage(truncated));
+        }
+        for (int length = 0; length < keyMessage.length; ++length) {
+            byte[] truncated = Arrays.copyOf(keyMessage, length);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeKeyMessage(truncated));
+        }
+        for (int length = 0; length < cipherInfoMessage.length; ++length) {
+            byte[] truncated = Arrays.copyOf(cipherInfoMessage, length);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeCipherInfoMessage(truncated));
+        }
+        for (int length = 0; length < fileChunkMessage.length; ++length) {
+            byte[] truncated = Arrays.copyOf(fileChunkMessage, length);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeFileChunkMessage(truncated));
+        }
+    }
+
+    @Test
+    void rejectsIllegalLength() {
+        byte[] keyMessage = MessageCodec.encode(KEY_MESSAGE);
+        // длина typeMessage сразу за двумя байтами заголовка
+        ByteBuffer buffer = ByteBuffer.wrap(keyMessage);
+
+        buffer.putInt(2, -2);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeKeyMessage(keyMessage));
+
+        buffer.putInt(2, keyMessage.length);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeKeyMessage(keyMessage));
+
+        buffer.putInt(2, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeKeyMessage(keyMessage));
+    }
+
+    @Test
+    void rejectsWrongVersion() {
+        byte[] message = MessageCodec.encode(MESSAGE);
+        message[0] = MessageCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeMessage(message));
+    }
+
+    @Test
+    void rejectsWrongKind() {
+        byte[] message = MessageCodec.encode(MESSAGE);
+        byte[] keyMessage = MessageCodec.encode(KEY_MESSAGE);
+        byte[] cipherInfoMessage = MessageCodec.encode(CIPHER_INFO_MESSAGE);
+        byte[] fileChunkMessage = MessageCodec.encode(FILE_CHUNK_MESSAGE);
+
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeMessage(keyMessage));
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeKeyMessage(cipherInfoMessage));
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeCipherInfoMessage(fileChunkMessage));
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeFileChunkMessage(message));
+
+        message[1] = 0;
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeMessage(message));
+    }
+}